@@ -6,6 +6,9 @@ import org.apache.sling.api.resource.ResourceResolver;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 
 /**
  * a service to provide access to the content of referenced resources
@@ -21,6 +24,23 @@ public interface ContentRefService {
     @NotNull
     String getReferencedContent(@NotNull ResourceResolver resolver, String path);
 
+    /**
+     * returns a reader for the content of a referenced file resource without loading the content into memory;
+     * the reader has to be closed by the caller
+     *
+     * @return the content reader or 'null' if the resource is not available or not a file
+     */
+    @Nullable
+    Reader getReferencedContentReader(@NotNull ResourceResolver resolver, String path);
+
+    /**
+     * writes the content of a referenced file resource to the writer
+     *
+     * @return 'true' if the content is written, 'false' if the resource is not available or not a file
+     */
+    boolean writeReferencedContent(@NotNull ResourceResolver resolver, String path, @NotNull Writer writer)
+            throws IOException;
+
     /**
      * returns the result of the rendering of a resource by sending an internal request;
      * returns an empty string if the request fails
@@ -33,6 +53,18 @@ public interface ContentRefService {
     @NotNull
     String getRenderedContent(@NotNull SlingHttpServletRequest contextRequest, String url, boolean emptyLines);
 
+    /**
+     * writes the result of the rendering of a resource by sending an internal request to the writer;
+     * writes nothing if the request fails
+     *
+     * @param contextRequest the received request
+     * @param url            the url to the referenced resource
+     * @param emptyLines     remove multiple empty lines (streaming) if this is not 'true'
+     * @param writer         the target of the rendered content
+     */
+    void writeRenderedContent(@NotNull SlingHttpServletRequest contextRequest, String url, boolean emptyLines,
+                              @NotNull Writer writer) throws IOException;
+
     @Nullable
     BufferedImage getRenderedImage(@NotNull final SlingHttpServletRequest contextRequest,
                                    @NotNull final String url, int width, @Nullable Integer height,
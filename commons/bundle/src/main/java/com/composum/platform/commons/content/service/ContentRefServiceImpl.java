@@ -1,6 +1,8 @@
 package com.composum.platform.commons.content.service;
 
 import com.composum.platform.commons.request.service.InternalRequestService;
+import com.composum.platform.commons.util.EmptyLinesFilterWriter;
+import com.composum.platform.commons.util.LruCache;
 import com.composum.sling.core.util.ResourceUtil;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -8,9 +10,14 @@ import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,7 +26,14 @@ import org.jetbrains.annotations.Nullable;
 import javax.jcr.Binary;
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Calendar;
 import java.util.regex.Pattern;
 
 @Component(
@@ -27,57 +41,202 @@ import java.util.regex.Pattern;
                 Constants.SERVICE_DESCRIPTION + "=Composum Platform Content Reference Service"
         }
 )
+@Designate(ocd = ContentRefServiceImpl.Configuration.class)
 public class ContentRefServiceImpl implements ContentRefService {
 
     private static final Logger LOG = LoggerFactory.getLogger(ContentRefServiceImpl.class);
 
     private static final Pattern SERVLET_URI = Pattern.compile("/bin/(public|cpm)/.*\\.[^./]+/.*^$");
 
+    @ObjectClassDefinition(
+            name = "Composum Platform Content Reference Service",
+            description = "provides the content of referenced resources"
+    )
+    public @interface Configuration {
+
+        @AttributeDefinition(
+                name = "Rendered Content Cache Size",
+                description = "the maximum number of rendered contents kept in memory; '0' disables the cache."
+                        + " Caution: an entry is reused as long as the URL, host, user and the last modification of the"
+                        + " referenced resource are the same - changes of content included by the rendering and"
+                        + " different release views of a resource with the same modification time are not detected."
+        )
+        int renderedContentCacheSize() default 0;
+
+        @AttributeDefinition(
+                name = "Max. Cached Content Length",
+                description = "rendered contents larger than that (in characters) are not cached"
+        )
+        int maxCachedContentLength() default 65536;
+    }
+
     @Reference
     protected InternalRequestService internalRequestService;
 
     @Reference(cardinality = ReferenceCardinality.OPTIONAL)
     protected volatile HtmlImageRenderer htmlImageRenderer;
 
+    /**
+     * the rendered content cache; the key contains the last modification time of the referenced resource,
+     * so each change of the resource leads to a new entry - see the limitations in the configuration
+     */
+    protected volatile LruCache<String, String> renderedContentCache;
+
+    protected volatile int maxCachedContentLength;
+
+    @Activate
+    @Modified
+    protected void activate(Configuration config) {
+        renderedContentCache = config.renderedContentCacheSize() > 0
+                ? new LruCache<>(config.renderedContentCacheSize()) : null;
+        maxCachedContentLength = config.maxCachedContentLength();
+    }
+
     @Override
     @NotNull
     public String getReferencedContent(@NotNull ResourceResolver resolver, String path) {
         String content = "";
+        Reader reader = getReferencedContentReader(resolver, path);
+        if (reader != null) {
+            try {
+                content = IOUtils.toString(reader);
+            } catch (Exception ex) {
+                LOG.error(ex.getMessage(), ex);
+            } finally {
+                IOUtils.closeQuietly(reader);
+            }
+        }
+        return content;
+    }
+
+    @Override
+    @Nullable
+    public Reader getReferencedContentReader(@NotNull ResourceResolver resolver, String path) {
         if (StringUtils.isNotBlank(path) && !SERVLET_URI.matcher(path).matches()) {
             Resource resource = resolver.getResource(path);
             if (resource != null && ResourceUtil.isFile(resource)) {
                 Binary binary = ResourceUtil.getBinaryData(resource);
-                try {
-                    content = IOUtils.toString(binary.getStream(), CODE_ENCODING);
-                } catch (Exception ex) {
-                    LOG.error(ex.getMessage(), ex);
-                } finally {
-                    binary.dispose();
+                if (binary != null) {
+                    try {
+                        return new FilterReader(new InputStreamReader(binary.getStream(), CODE_ENCODING)) {
+                            @Override
+                            public void close() throws IOException {
+                                try {
+                                    super.close();
+                                } finally {
+                                    binary.dispose();
+                                }
+                            }
+                        };
+                    } catch (Exception ex) {
+                        LOG.error(ex.getMessage(), ex);
+                        binary.dispose();
+                    }
                 }
             } else {
                 LOG.warn("resource not found or not a file '{}'", path);
             }
         }
-        return content;
+        return null;
+    }
+
+    @Override
+    public boolean writeReferencedContent(@NotNull ResourceResolver resolver, String path, @NotNull Writer writer)
+            throws IOException {
+        Reader reader = getReferencedContentReader(resolver, path);
+        if (reader != null) {
+            try {
+                IOUtils.copy(reader, writer);
+            } finally {
+                reader.close();
+            }
+            return true;
+        }
+        return false;
     }
 
     @Override
     @NotNull
     public String getRenderedContent(@NotNull SlingHttpServletRequest contextRequest, String url, boolean emptyLines) {
         String content = "";
+        if (StringUtils.isNotBlank(url)) {
+            try (StringWriter writer = new StringWriter()) {
+                writeRenderedContent(contextRequest, url, emptyLines, writer);
+                content = writer.toString();
+            } catch (Exception ex) {
+                LOG.error(ex.getMessage(), ex);
+            }
+        }
+        return content;
+    }
+
+    @Override
+    public void writeRenderedContent(@NotNull SlingHttpServletRequest contextRequest, String url, boolean emptyLines,
+                                     @NotNull Writer writer) throws IOException {
         if (StringUtils.isNotBlank(url)) {
             try {
                 InternalRequestService.PathInfo pathInfo =
                         new InternalRequestService.PathInfo(contextRequest, url);
-                content = internalRequestService.getString(contextRequest, pathInfo);
-                if (!emptyLines) {
-                    content = content.replaceAll("(?m)^\\s+$", ""); // remove empty lines
+                LruCache<String, String> cache = renderedContentCache;
+                String cacheKey = cache != null ? getCacheKey(contextRequest, pathInfo, emptyLines) : null;
+                if (cacheKey == null) { // not cached - filter directly into the target
+                    String content = internalRequestService.getString(contextRequest, pathInfo);
+                    if (emptyLines) {
+                        writer.write(content);
+                    } else {
+                        writeWithoutEmptyLines(content, writer);
+                    }
+                    return;
+                }
+                String content = cache.get(cacheKey);
+                if (content == null) {
+                    content = internalRequestService.getString(contextRequest, pathInfo);
+                    if (!emptyLines) {
+                        StringWriter filtered = new StringWriter(content.length());
+                        writeWithoutEmptyLines(content, filtered);
+                        content = filtered.toString();
+                    }
+                    if (content.length() <= maxCachedContentLength) {
+                        cache.put(cacheKey, content);
+                    }
                 }
+                writer.write(content);
+            } catch (IOException ex) {
+                throw ex;
             } catch (Exception ex) {
                 LOG.error(ex.getMessage(), ex);
             }
         }
-        return content;
+    }
+
+    protected void writeWithoutEmptyLines(@NotNull String content, @NotNull Writer writer) throws IOException {
+        EmptyLinesFilterWriter filter = new EmptyLinesFilterWriter(writer);
+        filter.write(content);
+        filter.finish();
+    }
+
+    /**
+     * @return the key for the rendered content cache or 'null' if the referenced resource has no modification
+     * timestamp and the content is therefore not cacheable
+     */
+    @Nullable
+    protected String getCacheKey(@NotNull SlingHttpServletRequest contextRequest,
+                                 @NotNull InternalRequestService.PathInfo pathInfo, boolean emptyLines) {
+        Resource resource = pathInfo.getResource();
+        if (resource != null) {
+            Calendar lastModified = resource.getValueMap().get(ResourceUtil.PROP_LAST_MODIFIED, Calendar.class);
+            if (lastModified == null) {
+                Resource content = resource.getChild(ResourceUtil.CONTENT_NODE);
+                lastModified = content != null
+                        ? content.getValueMap().get(ResourceUtil.PROP_LAST_MODIFIED, Calendar.class) : null;
+            }
+            if (lastModified != null) {
+                return pathInfo.getRequestUrl() + "|" + contextRequest.getServerName() + ":"
+                        + contextRequest.getServerPort() + "|" + emptyLines + "|" + lastModified.getTimeInMillis()
+                        + "|" + contextRequest.getResourceResolver().getUserID();
+            }
+        }
+        return null;
     }
 
     @Override
@@ -27,6 +27,14 @@ public interface PlaceholderService {
      */
     interface ValueProvider {
 
+        /**
+         * an optional (multi value) service property to declare the key prefixes served by a provider;
+         * the prefix of a key is the part before the first '.' or ':' - e.g. 'site' for 'site.title';
+         * providers with such a declaration are asked only for keys with one of their prefixes,
+         * providers without this property are asked for each key
+         */
+        String PROP_KEY_PREFIX = "placeholder.prefix";
+
         /**
          * @return the value of the key if the provider can retrieve it otherwise 'null'
          */
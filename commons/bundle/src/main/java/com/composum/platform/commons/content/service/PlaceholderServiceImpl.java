@@ -6,10 +6,13 @@
 package com.composum.platform.commons.content.service;
 
 import com.composum.platform.commons.osgi.ServiceManager;
+import com.composum.platform.commons.util.LruCache;
 import com.composum.sling.core.BeanContext;
 import com.composum.sling.core.util.ValueEmbeddingReader;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.commons.osgi.PropertiesUtil;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceReference;
@@ -26,15 +29,17 @@ import org.jetbrains.annotations.Nullable;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
-import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
 /**
- *
+ * The placeholder service implementation; texts are compiled into {@link PlaceholderTemplate}s which are cached,
+ * so that texts embedded repeatedly are not scanned for placeholders again and again.
  */
 @Component(
         property = {
@@ -50,6 +55,17 @@ public class PlaceholderServiceImpl extends ServiceManager<PlaceholderService.Va
 
     protected static final Object NULL = "";
 
+    /** the maximum number of compiled templates kept in the cache */
+    public static final int TEMPLATE_CACHE_SIZE = 1000;
+
+    /** texts longer than that are compiled for each use but not cached */
+    public static final int MAX_CACHED_TEXT_LENGTH = 16 * 1024;
+
+    protected final LruCache<String, PlaceholderTemplate> templateCache = new LruCache<>(TEMPLATE_CACHE_SIZE);
+
+    /** the providers to use for each key prefix; rebuilt lazily after each provider change */
+    protected volatile ProviderDispatch providerDispatch;
+
     @Reference(
             service = ValueProvider.class,
             policy = ReferencePolicy.DYNAMIC,
@@ -57,10 +73,12 @@ public class PlaceholderServiceImpl extends ServiceManager<PlaceholderService.Va
     )
     protected void bindValueProvider(@NotNull final ServiceReference<ValueProvider> serviceReference) {
         bindReference(serviceReference);
+        providerDispatch = null;
     }
 
     protected void unbindValueProvider(@NotNull final ServiceReference<ValueProvider> serviceReference) {
         unbindReference(serviceReference);
+        providerDispatch = null;
     }
 
     @Activate
@@ -71,7 +89,7 @@ public class PlaceholderServiceImpl extends ServiceManager<PlaceholderService.Va
     protected <T> T getProviderValue(@NotNull final BeanContext context,
                                      @NotNull final String key, @NotNull final Class<T> type) {
         T value;
-        for (ManagedReference reference : references) {
+        for (ManagedReference reference : getProviderDispatch().getProviders(key)) {
             if ((value = reference.getService().getValue(context, key, type)) != null) {
                 return value;
             }
@@ -79,6 +97,60 @@ public class PlaceholderServiceImpl extends ServiceManager<PlaceholderService.Va
         return null;
     }
 
+    @NotNull
+    protected ProviderDispatch getProviderDispatch() {
+        ProviderDispatch dispatch = providerDispatch;
+        if (dispatch == null) {
+            synchronized (references) {
+                dispatch = new ProviderDispatch(new ArrayList<>(references));
+            }
+            providerDispatch = dispatch;
+        }
+        return dispatch;
+    }
+
+    /**
+     * the providers precomputed for each declared key prefix ({@link ValueProvider#PROP_KEY_PREFIX}),
+     * each list in the ranking order of the providers
+     */
+    protected class ProviderDispatch {
+
+        protected final List<ManagedReference> generic = new ArrayList<>();
+        protected final Map<String, List<ManagedReference>> byPrefix = new HashMap<>();
+
+        public ProviderDispatch(@NotNull final List<ManagedReference> references) {
+            for (ManagedReference reference : references) {
+                String[] prefixes = PropertiesUtil.toStringArray(
+                        reference.reference.getProperty(ValueProvider.PROP_KEY_PREFIX), new String[0]);
+                if (prefixes.length > 0) {
+                    for (String prefix : prefixes) {
+                        byPrefix.computeIfAbsent(prefix, (k) -> new ArrayList<>()).add(reference);
+                    }
+                } else {
+                    generic.add(reference);
+                }
+            }
+            for (List<ManagedReference> providers : byPrefix.values()) {
+                providers.addAll(generic);
+                Collections.sort(providers);
+            }
+        }
+
+        @NotNull
+        public List<ManagedReference> getProviders(@NotNull final String key) {
+            if (!byPrefix.isEmpty()) {
+                int end = StringUtils.indexOfAny(key, '.', ':');
+                if (end > 0) {
+                    List<ManagedReference> providers = byPrefix.get(key.substring(0, end));
+                    if (providers != null) {
+                        return providers;
+                    }
+                }
+            }
+            return generic;
+        }
+    }
+
     /**
      * a caching value map (i don't know how expensive the retrieval by the providers is)
      */
@@ -128,9 +200,14 @@ public class PlaceholderServiceImpl extends ServiceManager<PlaceholderService.Va
     @NotNull
     public String applyPlaceholders(@NotNull final BeanContext context,
                                     @NotNull final String text, @NotNull final Map<String, Object> values) {
-        try (StringWriter writer = new StringWriter()) {
-            applyPlaceholders(context, writer, text, values);
-            return writer.toString();
+        PlaceholderTemplate template = getTemplate(text);
+        if (template.isConstant()) {
+            return text;
+        }
+        StringBuilder builder = new StringBuilder(template.getLiteralLength() + 64);
+        try {
+            render(context, builder, template, values);
+            return builder.toString();
         } catch (IOException ex) {
             LOG.error(ex.getMessage(), ex);
             return "";
@@ -141,8 +218,54 @@ public class PlaceholderServiceImpl extends ServiceManager<PlaceholderService.Va
     public void applyPlaceholders(@NotNull final BeanContext context, @NotNull final Writer writer,
                                   @NotNull final String text, @NotNull final Map<String, Object> values)
             throws IOException {
-        try (Reader textReader = getEmbeddingReader(context, new StringReader(text), values)) {
-            IOUtils.copy(textReader, writer);
+        PlaceholderTemplate template = getTemplate(text);
+        if (template.isConstant()) {
+            writer.write(text);
+        } else {
+            render(context, writer, template, values);
+        }
+    }
+
+    /**
+     * @return the compiled template of the text - from the cache if the text was used before
+     */
+    @NotNull
+    protected PlaceholderTemplate getTemplate(@NotNull final String text) {
+        if (text.length() > MAX_CACHED_TEXT_LENGTH) {
+            return PlaceholderTemplate.compile(text, PLACEHOLDER_PATTERN);
+        }
+        return templateCache.computeIfAbsent(text, (key) -> PlaceholderTemplate.compile(key, PLACEHOLDER_PATTERN));
+    }
+
+    protected void render(@NotNull final BeanContext context, @NotNull final Appendable output,
+                          @NotNull final PlaceholderTemplate template, @NotNull final Map<String, Object> values)
+            throws IOException {
+        Map<String, Object> valueMap = getValues(context, values);
+        template.render(output, (out, slot) -> renderSlot(context, out, slot, valueMap));
+    }
+
+    /**
+     * writes the value of a simple key placeholder directly if it's a string value; all other placeholders
+     * (typed, formatted, non string values) are rendered by a {@link ValueEmbeddingReader} to keep its semantics
+     */
+    protected void renderSlot(@NotNull final BeanContext context, @NotNull final Appendable output,
+                              @NotNull final PlaceholderTemplate.Slot slot, @NotNull final Map<String, Object> values)
+            throws IOException {
+        String key = slot.getKey();
+        if (key != null) {
+            Object value = values instanceof ValueMap
+                    ? ((ValueMap) values).get(key, Object.class) : values.get(key);
+            if (value instanceof String) {
+                output.append((String) value);
+                return;
+            }
+        }
+        try (Reader reader = new ValueEmbeddingReader(new StringReader(slot.getPlaceholder()),
+                values, context.getLocale(), getClass())) {
+            char[] buffer = new char[256];
+            for (int len; (len = reader.read(buffer)) >= 0; ) {
+                output.append(new String(buffer, 0, len));
+            }
         }
     }
 
@@ -0,0 +1,139 @@
+/*
+ * copyright (c) 2015ff IST GmbH Dresden, Germany - https://www.ist-software.com
+ *
+ * This software may be modified and distributed under the terms of the MIT license.
+ */
+package com.composum.platform.commons.content.service;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A text with placeholders ('${...}') compiled once into a sequence of literal segments and placeholder slots,
+ * so that it can be rendered repeatedly by direct writes without scanning the text again.
+ */
+public class PlaceholderTemplate {
+
+    /** Placeholder expressions that are just a key without any type or format specification. */
+    public static final Pattern SIMPLE_KEY_PATTERN = Pattern.compile("^[\\w.\\-/]+$");
+
+    /** Renders the value of a placeholder slot. */
+    @FunctionalInterface
+    public interface SlotRenderer {
+
+        void render(@NotNull Appendable output, @NotNull Slot slot) throws IOException;
+    }
+
+    /** A placeholder within the template. */
+    public static class Slot {
+
+        protected final String placeholder;
+        protected final String expression;
+        protected final String key;
+
+        protected Slot(@NotNull final String placeholder, @NotNull final String expression) {
+            this.placeholder = placeholder;
+            this.expression = expression;
+            this.key = SIMPLE_KEY_PATTERN.matcher(expression).matches() ? expression : null;
+        }
+
+        /** @return the complete placeholder text, e.g. '${key;format}' */
+        @NotNull
+        public String getPlaceholder() {
+            return placeholder;
+        }
+
+        /** @return the placeholder content without the '${' and '}' */
+        @NotNull
+        public String getExpression() {
+            return expression;
+        }
+
+        /** @return the key if the placeholder is a simple key without type or format, otherwise null */
+        @Nullable
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public String toString() {
+            return placeholder;
+        }
+    }
+
+    protected final List<Object> segments;
+    protected final int literalLength;
+
+    protected PlaceholderTemplate(@NotNull final List<Object> segments, int literalLength) {
+        this.segments = Collections.unmodifiableList(segments);
+        this.literalLength = literalLength;
+    }
+
+    /**
+     * Splits the text into literal segments and placeholder slots.
+     *
+     * @param text    the text to compile
+     * @param pattern the placeholder pattern; group 1 has to be the whole placeholder, group 2 its content
+     */
+    @NotNull
+    public static PlaceholderTemplate compile(@NotNull final String text, @NotNull final Pattern pattern) {
+        List<Object> segments = new ArrayList<>();
+        int literalLength = 0;
+        Matcher matcher = pattern.matcher(text);
+        int pos = 0;
+        while (matcher.find()) {
+            if (matcher.start() > pos) {
+                segments.add(text.substring(pos, matcher.start()));
+                literalLength += matcher.start() - pos;
+            }
+            segments.add(new Slot(matcher.group(1), matcher.group(2)));
+            pos = matcher.end();
+        }
+        if (pos < text.length()) {
+            segments.add(pos == 0 ? text : text.substring(pos));
+            literalLength += text.length() - pos;
+        }
+        return new PlaceholderTemplate(segments, literalLength);
+    }
+
+    /**
+     * Writes the literal segments and the rendered slots to the output.
+     */
+    public void render(@NotNull final Appendable output, @NotNull final SlotRenderer renderer) throws IOException {
+        for (Object segment : segments) {
+            if (segment instanceof Slot) {
+                renderer.render(output, (Slot) segment);
+            } else {
+                output.append((String) segment);
+            }
+        }
+    }
+
+    /** @return true if the text contains no placeholders at all */
+    public boolean isConstant() {
+        for (Object segment : segments) {
+            if (segment instanceof Slot) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return the summarized length of all literal segments, useful as size hint for the output */
+    public int getLiteralLength() {
+        return literalLength;
+    }
+
+    /** @return the literal segments ({@link String}) and placeholder slots ({@link Slot}) in text order */
+    @NotNull
+    public List<Object> getSegments() {
+        return segments;
+    }
+}
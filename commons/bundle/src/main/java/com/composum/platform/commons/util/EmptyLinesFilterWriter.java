@@ -0,0 +1,99 @@
+package com.composum.platform.commons.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A writer which collapses multiple empty (or whitespace only) lines while streaming the text to the wrapped writer.
+ * The result is the same as the result of {@code text.replaceAll("(?m)^\\s+$", "")} without buffering more than
+ * the current run of whitespace at the begin of a line. Caution: the end of the text has to be signalled by
+ * {@link #close()} or {@link #finish()}.
+ */
+public class EmptyLinesFilterWriter extends FilterWriter {
+
+    /** the whitespace found since the last line start which is not written yet */
+    protected final StringBuilder pending = new StringBuilder();
+
+    protected boolean lineStart = true;
+
+    protected char lastWritten;
+
+    public EmptyLinesFilterWriter(@NotNull Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        char chr = (char) c;
+        if (chr == '\n' && lastWritten == '\r' && pending.length() == 0) {
+            out.write(chr); // the line start is after a '\r\n', not between '\r' and '\n'
+            lastWritten = chr;
+            return;
+        }
+        if (lineStart) {
+            if (isWhitespace(chr)) {
+                pending.append(chr);
+                return;
+            }
+            writePending();
+        }
+        out.write(chr);
+        lastWritten = chr;
+        lineStart = chr == '\n' || chr == '\r';
+    }
+
+    @Override
+    public void write(@NotNull char[] cbuf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            write(cbuf[i]);
+        }
+    }
+
+    @Override
+    public void write(@NotNull String str, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            write(str.charAt(i));
+        }
+    }
+
+    /**
+     * Writes the pending whitespace run if it's followed by some text: all whitespace up to the last line break
+     * of the run is dropped, the rest (line break and the indentation of the text) is written.
+     */
+    protected void writePending() throws IOException {
+        int lastBreak = -1;
+        for (int i = pending.length() - 1; i > 0 && lastBreak < 0; i--) {
+            char chr = pending.charAt(i);
+            if (chr == '\r' || (chr == '\n' && pending.charAt(i - 1) != '\r')) {
+                lastBreak = i;
+            }
+        }
+        out.write(pending.substring(lastBreak > 0 ? lastBreak : 0));
+        pending.setLength(0);
+        lineStart = false;
+    }
+
+    /**
+     * Signals the end of the text without closing the wrapped writer; a whitespace run at the end of the text
+     * is dropped completely.
+     */
+    public void finish() throws IOException {
+        pending.setLength(0);
+        lineStart = true;
+        lastWritten = 0;
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    protected static boolean isWhitespace(char chr) {
+        return chr == ' ' || chr == '\t' || chr == '\n' || chr == '\r' || chr == '\f' || chr == '\u000B';
+    }
+}
@@ -0,0 +1,83 @@
+package com.composum.platform.commons.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A simple size bounded cache which evicts the least recently used entries if the maximum size is exceeded.
+ * Meant for small in memory caches of computed values (compiled templates, matcher decisions and the like) where
+ * a full featured cache would be overkill; all operations are synchronized on the cache instance.
+ */
+@ThreadSafe
+public class LruCache<K, V> {
+
+    protected final int maxSize;
+
+    protected final Map<K, V> entries;
+
+    /**
+     * @param maxSize the maximum number of entries kept; if this is &lt;= 0 nothing is cached at all
+     */
+    public LruCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<K, V>(Math.max(16, Math.min(maxSize, 1024)), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > LruCache.this.maxSize;
+            }
+        };
+    }
+
+    /** Returns the cached value or null if there is none. */
+    @Nullable
+    public synchronized V get(@NotNull K key) {
+        return entries.get(key);
+    }
+
+    /** Puts a value into the cache, possibly evicting the least recently used entry. */
+    public synchronized void put(@NotNull K key, @NotNull V value) {
+        if (maxSize > 0) {
+            entries.put(key, value);
+        }
+    }
+
+    /**
+     * Returns the cached value or computes and caches it if there is none. The computation is done outside of the
+     * lock, so it might happen that a value is computed twice in parallel - the function should be side effect free.
+     */
+    @NotNull
+    public V computeIfAbsent(@NotNull K key, @NotNull Function<? super K, ? extends V> function) {
+        V value = get(key);
+        if (value == null) {
+            value = function.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    public synchronized void remove(@NotNull K key) {
+        entries.remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LruCache{" + entries.size() + "/" + maxSize + "}";
+    }
+}
@@ -0,0 +1,51 @@
+package com.composum.platform.commons.content.service;
+
+import com.composum.sling.platform.testing.testutil.ErrorCollectorAlwaysPrintingFailures;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+/**
+ * Tests for {@link PlaceholderTemplate}.
+ */
+public class PlaceholderTemplateTest {
+
+    @Rule
+    public final ErrorCollectorAlwaysPrintingFailures ec = new ErrorCollectorAlwaysPrintingFailures();
+
+    protected String render(String text) throws IOException {
+        PlaceholderTemplate template = PlaceholderTemplate.compile(text, PlaceholderServiceImpl.PLACEHOLDER_PATTERN);
+        StringBuilder builder = new StringBuilder();
+        template.render(builder, (output, slot) -> output.append("[").append(slot.getExpression()).append("]"));
+        return builder.toString();
+    }
+
+    @Test
+    public void render() throws IOException {
+        ec.checkThat(render(""), is(""));
+        ec.checkThat(render("plain text"), is("plain text"));
+        ec.checkThat(render("${a}"), is("[a]"));
+        ec.checkThat(render("x ${a} y ${b;%s} z"), is("x [a] y [b;%s] z"));
+        ec.checkThat(render("${a}${b}"), is("[a][b]"));
+        ec.checkThat(render("unclosed ${a"), is("unclosed ${a"));
+    }
+
+    @Test
+    public void segments() {
+        PlaceholderTemplate template = PlaceholderTemplate.compile("ab ${site.title} ${date;yyyy}",
+                PlaceholderServiceImpl.PLACEHOLDER_PATTERN);
+        ec.checkThat(template.isConstant(), is(false));
+        ec.checkThat(template.getSegments().size(), is(4));
+        ec.checkThat(template.getLiteralLength(), is(4));
+        PlaceholderTemplate.Slot simple = (PlaceholderTemplate.Slot) template.getSegments().get(1);
+        ec.checkThat(simple.getKey(), is("site.title"));
+        ec.checkThat(simple.getPlaceholder(), is("${site.title}"));
+        PlaceholderTemplate.Slot formatted = (PlaceholderTemplate.Slot) template.getSegments().get(3);
+        ec.checkThat(formatted.getKey(), nullValue());
+        ec.checkThat(PlaceholderTemplate.compile("text", PlaceholderServiceImpl.PLACEHOLDER_PATTERN).isConstant(), is(true));
+    }
+}
@@ -0,0 +1,54 @@
+package com.composum.platform.commons.util;
+
+import com.composum.sling.platform.testing.testutil.ErrorCollectorAlwaysPrintingFailures;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+
+/**
+ * Tests for {@link EmptyLinesFilterWriter}.
+ */
+public class EmptyLinesFilterWriterTest {
+
+    @Rule
+    public final ErrorCollectorAlwaysPrintingFailures ec = new ErrorCollectorAlwaysPrintingFailures();
+
+    protected String filter(String text) throws IOException {
+        StringWriter result = new StringWriter();
+        EmptyLinesFilterWriter writer = new EmptyLinesFilterWriter(result);
+        writer.write(text);
+        writer.finish();
+        return result.toString();
+    }
+
+    @Test
+    public void examples() throws IOException {
+        ec.checkThat(filter(""), is(""));
+        ec.checkThat(filter("a\nb"), is("a\nb"));
+        ec.checkThat(filter("a\n\nb"), is("a\n\nb"));
+        ec.checkThat(filter("a\n  \n\n  \nb"), is("a\n\nb"));
+        ec.checkThat(filter("a\n  b\n"), is("a\n  b\n"));
+        ec.checkThat(filter("a\r\n\r\n\r\nb"), is("a\r\n\r\nb"));
+        ec.checkThat(filter("a\n   "), is("a\n"));
+    }
+
+    /** The filter has to do exactly what the replacement it replaces did. */
+    @Test
+    public void sameAsRegex() throws IOException {
+        Random random = new Random(4711);
+        String chars = " \t\n\rab";
+        for (int n = 0; n < 10000; n++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = random.nextInt(20); i > 0; i--) {
+                text.append(chars.charAt(random.nextInt(chars.length())));
+            }
+            ec.checkThat(text.toString(), filter(text.toString()),
+                    is(text.toString().replaceAll("(?m)^\\s+$", "")));
+        }
+    }
+}
@@ -26,9 +26,12 @@ import org.slf4j.Logger;
 import javax.annotation.CheckForNull;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Type;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
 
 import static org.apache.commons.lang3.StringUtils.defaultIfBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
@@ -52,6 +55,28 @@ public class PropertyInjector implements Injector, StaticInjectAnnotationProcess
 
     private static final Logger LOG = getLogger(PropertyInjector.class);
 
+    /**
+     * The shared instances of the strategy classes - these are stateless, so there is no need to recreate them.
+     * A {@link ClassValue} doesn't keep the classes (and thus the classloaders of their bundles) from being unloaded.
+     */
+    protected final ClassValue<Object> strategyInstances = new ClassValue<Object>() {
+        @Override
+        protected Object computeValue(Class<?> strategyClass) {
+            try {
+                return strategyClass.newInstance();
+            } catch (InstantiationException | IllegalAccessException e) {
+                LOG.error("Can't instantiate " + strategyClass, e);
+                return null; // somewhat doubtable, but the general convention in sling-models
+            }
+        }
+    };
+
+    /**
+     * Cache for the injection plans of the annotated elements; lives as long as this service. The keys are weak, so
+     * that the model classes of uninstalled bundles can be unloaded.
+     */
+    protected final Map<AnnotatedElement, InjectionPlan> injectionPlans = Collections.synchronizedMap(new WeakHashMap<>());
+
     @Override
     public @NotNull
     String getName() {
@@ -62,32 +87,85 @@ public class PropertyInjector implements Injector, StaticInjectAnnotationProcess
     public Object getValue(@NotNull Object adaptable, String name, @NotNull Type type,
                            @NotNull AnnotatedElement element, @NotNull DisposalCallbackRegistry callbackRegistry) {
 
-        PropertyJoinedWithDefaultsWrapper annotation = PropertyJoinedWithDefaultsWrapper.getWithDefaults(element);
-        if (null == annotation) return null;
+        InjectionPlan plan = getInjectionPlan(element, name, type);
+        if (null == plan) return null;
         PreparedValues preparedValues = PreparedValues.make(adaptable);
-        ResourceHandle handle = preparedValues.determineResource(annotation.value());
+        if (null == preparedValues) return null;
+        ResourceHandle handle = preparedValues.determineResource(plan.annotation.value(), plan.resourceStrategy);
         if (null == handle || !handle.isValid()) return null;
 
-        String attribute = defaultIfBlank(annotation.name(), name);
-        if (isNotBlank(annotation.basePath())) attribute = annotation.basePath() + '/' + attribute;
-
-        if (type instanceof Class<?>) {
-            Class<?> clazz = (Class<?>) type;
-            try {
-                InternationalizationStrategy i18nStrategy = annotation.i18nStrategy().newInstance();
-                return i18nStrategy.getInternationalized(handle, attribute, clazz, preparedValues.getBeanContext(),
-                        preparedValues.request,
-                        preparedValues.locale, annotation);
-            } catch (InstantiationException | IllegalAccessException e) {
-                LOG.error("Can't instantiate " + annotation.i18nStrategy(), e);
-                return null; // somewhat doubtable, but the general convention in sling-models
-            }
+        if (null != plan.targetClass) {
+            if (null == plan.i18nStrategy) return null; // couldn't be instantiated - logged already
+            return plan.i18nStrategy.getInternationalized(handle, plan.attribute, plan.targetClass,
+                    preparedValues.getBeanContext(), preparedValues.request, preparedValues.locale, plan.annotation);
         } else {
             LOG.debug("PropertyInjector doesn't support non-class types {}", type);
             return null;
         }
     }
 
+    /**
+     * Returns the cached injection plan for the element, creating it on the first use.
+     *
+     * @return the plan or null if the element has no {@link Property} annotation
+     */
+    protected InjectionPlan getInjectionPlan(@NotNull AnnotatedElement element, String name, @NotNull Type type) {
+        InjectionPlan plan = injectionPlans.get(element);
+        if (null == plan || !plan.isFor(name, type)) {
+            PropertyJoinedWithDefaultsWrapper annotation = PropertyJoinedWithDefaultsWrapper.getWithDefaults(element);
+            if (null == annotation) return null;
+            plan = new InjectionPlan(annotation, name, type, this);
+            injectionPlans.put(element, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Everything about the injection into an annotated element that can be determined once: the annotation joined
+     * with the defaults, the attribute path, the target class and the strategy instances.
+     */
+    protected static class InjectionPlan {
+
+        protected final PropertyJoinedWithDefaultsWrapper annotation;
+        protected final String name;
+        protected final Type type;
+        protected final String attribute;
+        protected final Class<?> targetClass;
+        protected final InternationalizationStrategy i18nStrategy;
+        protected final DetermineResourceStategy resourceStrategy;
+
+        protected InjectionPlan(@NotNull PropertyJoinedWithDefaultsWrapper annotation, String name, @NotNull Type type,
+                                @NotNull PropertyInjector injector) {
+            this.annotation = annotation;
+            this.name = name;
+            this.type = type;
+            String attribute = defaultIfBlank(annotation.name(), name);
+            if (isNotBlank(annotation.basePath())) attribute = annotation.basePath() + '/' + attribute;
+            this.attribute = attribute;
+            this.targetClass = type instanceof Class<?> ? (Class<?>) type : null;
+            this.i18nStrategy = null != targetClass ? injector.getStrategyInstance(annotation.i18nStrategy()) : null;
+            Class<? extends DetermineResourceStategy> resourceStrategyClass = annotation.value();
+            this.resourceStrategy = null == resourceStrategyClass
+                    || DetermineResourceStategy.OriginalResourceStrategy.class == resourceStrategyClass ? null
+                    : injector.getStrategyInstance(resourceStrategyClass);
+        }
+
+        /** Sanity check whether the plan fits the injection request - the name and type are always the same. */
+        protected boolean isFor(String name, Type type) {
+            return Objects.equals(this.name, name) && Objects.equals(this.type, type);
+        }
+    }
+
+    /**
+     * Returns the shared instance of a strategy class.
+     *
+     * @return the instance or null if the class cannot be instantiated (logged)
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> T getStrategyInstance(@NotNull Class<? extends T> strategyClass) {
+        return (T) strategyInstances.get(strategyClass);
+    }
+
     @Override
     public Object prepareValue(final Object adaptable) {
         PreparedValues res = PreparedValues.make(adaptable);
@@ -122,16 +200,20 @@ public class PropertyInjector implements Injector, StaticInjectAnnotationProcess
             return res;
         }
 
-        public ResourceHandle determineResource(@NotNull Class<? extends DetermineResourceStategy> strategy) {
+        /**
+         * Determines the resource with the given strategy, caching it per strategy.
+         *
+         * @param strategyInstance the instance of the strategy class; null for the original resource
+         */
+        public ResourceHandle determineResource(@NotNull Class<? extends DetermineResourceStategy> strategy,
+                                                DetermineResourceStategy strategyInstance) {
             ResourceHandle res = determinedResources.get(strategy);
             if (null == res) {
                 if (null == strategy || DetermineResourceStategy.OriginalResourceStrategy.class == strategy) {
                     res = ResourceHandle.use(resource);
-                } else try {
-                    res = ResourceHandle.use(strategy.newInstance().determineResource(beanContext, resource));
-                } catch (InstantiationException | IllegalAccessException e) {
-                    LOG.error("Can't instantiate " + strategy, e);
-                    return null; // somewhat doubtable, but the general convention in sling-models
+                } else {
+                    if (null == strategyInstance) return null; // couldn't be instantiated - logged already
+                    res = ResourceHandle.use(strategyInstance.determineResource(beanContext, resource));
                 }
                 determinedResources.put(strategy, res);
             }
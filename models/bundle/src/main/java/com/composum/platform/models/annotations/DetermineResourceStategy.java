@@ -4,7 +4,8 @@ import com.composum.sling.core.BeanContext;
 import org.apache.sling.api.resource.Resource;
 
 /**
- * Strategy to determine the resource the properties of the model should be initialized from.
+ * Strategy to determine the resource the properties of the model should be initialized from. Implementations are
+ * instantiated once and shared, so they have to be stateless.
  *
  * @author Hans-Peter Stoerr
  * @since 09/2017
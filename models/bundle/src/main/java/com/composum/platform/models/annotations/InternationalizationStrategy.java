@@ -10,13 +10,19 @@ import com.composum.sling.core.ResourceHandle;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 /**
- * A strategy to get property values, possibly internationalized.
+ * A strategy to get property values, possibly internationalized. Implementations are instantiated once and shared
+ * by all injections, so they have to be stateless.
  *
  * @author Hans-Peter Stoerr
  * @see Property
@@ -81,6 +87,9 @@ public interface InternationalizationStrategy {
         /** the subpath to store I18N translations of the element properties */
         public static final String I18N_PROPERTY_PATH = "i18n/";
 
+        /** request attribute caching the {@link I18nOverlay}s of the resources used during a request */
+        public static final String RA_I18N_OVERLAYS = I18NFOLDER.class.getName() + ".overlays";
+
         /**
          * {@inheritDoc} See detailed description at {@link I18NFOLDER}.
          *
@@ -94,7 +103,10 @@ public interface InternationalizationStrategy {
                 return super.getInternationalized(resource, name, valueClass, beanContext, request, locale, parameters);
             ResourceHandle handle = ResourceHandle.use(resource);
             List<String> i18npaths = getI18nPaths(usedLocale);
-            for (String i18npath : i18npaths) {
+            if (name.indexOf('/') < 0) {
+                T value = getOverlay(request, resource, usedLocale, i18npaths).get(name, valueClass);
+                if (null != value) return value;
+            } else for (String i18npath : i18npaths) {
                 T value = handle.getProperty(i18npath + '/' + name, valueClass);
                 if (null != value) return value;
             }
@@ -105,6 +117,51 @@ public interface InternationalizationStrategy {
             return null;
         }
 
+        /**
+         * Returns the overlay of the resources i18n folders for the locale - during a request it is created once per
+         * resource resolver, resource path and locale and kept in the request attribute {@link #RA_I18N_OVERLAYS}.
+         * The resolver is part of the key since resources with the same path can have different content for
+         * different resolvers, e.g. for a release.
+         */
+        @SuppressWarnings("unchecked")
+        protected I18nOverlay getOverlay(SlingHttpServletRequest request, Resource resource, Locale locale,
+                                         List<String> i18npaths) {
+            if (null == request) return new I18nOverlay(resource, i18npaths);
+            Map<ResourceResolver, Map<String, I18nOverlay>> overlays =
+                    (Map<ResourceResolver, Map<String, I18nOverlay>>) request.getAttribute(RA_I18N_OVERLAYS);
+            if (null == overlays) {
+                overlays = new IdentityHashMap<>();
+                request.setAttribute(RA_I18N_OVERLAYS, overlays);
+            }
+            return overlays.computeIfAbsent(resource.getResourceResolver(), (resolver) -> new HashMap<>())
+                    .computeIfAbsent(resource.getPath() + '|' + locale, (key) -> new I18nOverlay(resource, i18npaths));
+        }
+
+        /**
+         * The property maps of the existing i18n folders of a resource for a locale in the order of the locale
+         * fallback chain (the resource itself as last element), read from the repository once for all properties.
+         */
+        protected static class I18nOverlay {
+
+            protected final List<ValueMap> valueMaps = new ArrayList<>();
+
+            public I18nOverlay(Resource resource, List<String> i18npaths) {
+                for (String i18npath : i18npaths) {
+                    Resource i18nResource = ".".equals(i18npath) ? resource : resource.getChild(i18npath);
+                    if (null != i18nResource) valueMaps.add(i18nResource.getValueMap());
+                }
+            }
+
+            /** The value of the most specific i18n folder (or the resource itself) which has a value for name. */
+            public <T> T get(String name, Class<T> valueClass) {
+                for (ValueMap valueMap : valueMaps) {
+                    T value = valueMap.get(name, valueClass);
+                    if (null != value) return value;
+                }
+                return null;
+            }
+        }
+
         protected Locale getLocale(BeanContext beanContext, SlingHttpServletRequest request, Locale locale) {
             Locale usedLocale = locale;
             if (null == locale && null != beanContext) usedLocale = beanContext.getLocale();
@@ -29,7 +29,7 @@ public class LoadedModel implements SlingBean {
     @Override
     public void initialize(BeanContext context, Resource resource) {
         this.context = context;
-        this.resource = new LoadedResource(resource);
+        this.resource = loadResource(resource);
         locale = context.getLocale();
         if (locale == null) {
             SlingHttpServletRequest request = context.getRequest();
@@ -39,6 +39,14 @@ public class LoadedModel implements SlingBean {
         }
     }
 
+    /**
+     * loads the complete resource subtree; can be overridden to use a lazy loaded or depth restricted resource
+     * (see {@link LoadedResource#LoadedResource(Resource, boolean, int)}) if the resolver stays open
+     */
+    protected LoadedResource loadResource(Resource resource) {
+        return new LoadedResource(resource);
+    }
+
     @Override
     public void initialize(BeanContext context) {
         initialize(context, context.getResource());
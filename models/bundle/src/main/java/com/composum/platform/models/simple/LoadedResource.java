@@ -14,10 +14,17 @@ import java.util.LinkedHashMap;
 /**
  * a resource wrapper implementation to support a preloaded resource model
  * (resolved by a service resolver - probably closed already on resource use; no lazy loading possible)
+ * <p>
+ * If the resolver of the resource stays open during the use of the model, the resource can be loaded 'lazy': the
+ * properties and children of each resource are copied on the first access and kept from then on (a snapshot of the
+ * state at the first read). An optional maximum depth restricts the loaded subtree in both modes.
  */
 @SuppressWarnings("unchecked")
 public class LoadedResource extends ResourceWrapper {
 
+    /** the 'maxDepth' value for an unrestricted subtree */
+    public static final int UNLIMITED_DEPTH = -1;
+
     protected final String name;
     protected final String path;
     protected final String primaryType;
@@ -26,6 +33,13 @@ public class LoadedResource extends ResourceWrapper {
     protected final LoadedValueMap properties;
     protected final LinkedHashMap<String, Resource> children;
 
+    /** the maximum depth of the children loaded below this resource; '0': no children */
+    protected final int maxDepth;
+
+    /** the not yet loaded resource of a lazy resource - 'null' if properties and children are loaded */
+    private volatile Resource propertiesSource;
+    private volatile Resource childrenSource;
+
     public class LoadedValueMap extends HashMap<String, Object> implements ValueMap {
 
         @Nullable
@@ -34,7 +48,7 @@ public class LoadedResource extends ResourceWrapper {
             LoadedResource owner = lastSlash > 0
                     ? (LoadedResource) getChild(key.substring(0, lastSlash))
                     : LoadedResource.this;
-            return owner != null ? (T) owner.properties.get(key.substring(lastSlash + 1)) : null;
+            return owner != null ? (T) owner.getValueMap().get(key.substring(lastSlash + 1)) : null;
         }
 
         @Override
@@ -54,7 +68,21 @@ public class LoadedResource extends ResourceWrapper {
         }
     }
 
+    /**
+     * loads the complete subtree of the resource immediately
+     */
     public LoadedResource(@NotNull Resource resource) {
+        this(resource, false, UNLIMITED_DEPTH);
+    }
+
+    /**
+     * @param resource the resource to load
+     * @param lazy     if 'true' properties and children are loaded on first access; the resolver of the
+     *                 resource must be open until the loaded parts of the model are accessed
+     * @param maxDepth the maximum depth of the loaded children ('0': no children); {@link #UNLIMITED_DEPTH}
+     *                 for the complete subtree
+     */
+    public LoadedResource(@NotNull Resource resource, boolean lazy, int maxDepth) {
         super(resource);
         ValueMap valueMap = resource.getValueMap();
         name = resource.getName();
@@ -64,19 +92,70 @@ public class LoadedResource extends ResourceWrapper {
         resourceSuperType = resource.getResourceSuperType();
         children = new LinkedHashMap<>();
         properties = new LoadedValueMap();
-        load(resource);
+        this.maxDepth = maxDepth;
+        if (lazy) {
+            propertiesSource = resource;
+            childrenSource = resource;
+        } else {
+            load(resource);
+        }
     }
 
     protected void load(@NotNull Resource resource) {
+        loadProperties(resource);
+        loadChildren(resource, false);
+    }
+
+    protected void loadProperties(@NotNull Resource resource) {
         ValueMap valueMap = resource.getValueMap();
         for (String key : valueMap.keySet()) {
             properties.put(key, valueMap.get(key));
         }
-        for (Resource child : resource.getChildren()) {
-            children.put(child.getName(), new LoadedResource(child));
+    }
+
+    protected void loadChildren(@NotNull Resource resource, boolean lazy) {
+        if (maxDepth != 0) {
+            int childDepth = maxDepth > 0 ? maxDepth - 1 : UNLIMITED_DEPTH;
+            for (Resource child : resource.getChildren()) {
+                children.put(child.getName(), new LoadedResource(child, lazy, childDepth));
+            }
         }
     }
 
+    /**
+     * @return the properties, loaded on first call if this is a lazy resource
+     */
+    @NotNull
+    protected LoadedValueMap loadedProperties() {
+        if (propertiesSource != null) {
+            synchronized (properties) {
+                Resource source = propertiesSource;
+                if (source != null) {
+                    loadProperties(source);
+                    propertiesSource = null;
+                }
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * @return the children, loaded on first call if this is a lazy resource
+     */
+    @NotNull
+    protected LinkedHashMap<String, Resource> loadedChildren() {
+        if (childrenSource != null) {
+            synchronized (children) {
+                Resource source = childrenSource;
+                if (source != null) {
+                    loadChildren(source, true);
+                    childrenSource = null;
+                }
+            }
+        }
+        return children;
+    }
+
     @Override
     @NotNull
     public String getName() {
@@ -102,35 +181,40 @@ public class LoadedResource extends ResourceWrapper {
 
     @Override
     public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
-        return type.equals(ValueMap.class) ? (AdapterType) properties : super.adaptTo(type);
+        return type.equals(ValueMap.class) ? (AdapterType) loadedProperties() : super.adaptTo(type);
     }
 
     @Override
     @NotNull
     public ValueMap getValueMap() {
-        return properties;
+        return loadedProperties();
     }
 
     @Override
     @NotNull
     public Iterator<Resource> listChildren() {
-        return children.values().iterator();
+        return loadedChildren().values().iterator();
     }
 
     @Override
     @NotNull
     public Iterable<Resource> getChildren() {
-        return children.values();
+        return loadedChildren().values();
+    }
+
+    @Override
+    public boolean hasChildren() {
+        return !loadedChildren().isEmpty();
     }
 
     @Override
     public Resource getChild(@NotNull String relPath) {
         int firstSlash = relPath.indexOf('/');
         if (firstSlash > 0) {
-            Resource child = children.get(relPath.substring(0, firstSlash));
+            Resource child = loadedChildren().get(relPath.substring(0, firstSlash));
             return child != null ? child.getChild(relPath.substring(firstSlash + 1)) : null;
         } else {
-            return children.get(relPath);
+            return loadedChildren().get(relPath);
         }
     }
 }
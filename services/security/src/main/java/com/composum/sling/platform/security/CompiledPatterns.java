@@ -0,0 +1,174 @@
+/*
+ * copyright (c) 2015ff IST GmbH Dresden, Germany - https://www.ist-software.com
+ *
+ * This software may be modified and distributed under the terms of the MIT license.
+ */
+package com.composum.sling.platform.security;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A list of regex patterns compiled for a fast 'matches any of them' check: the patterns are sorted into a trie
+ * by their literal prefix and the patterns of each trie node are combined into one alternation, so that a check
+ * walks the value once and evaluates only the patterns which can match at all, independent of the number of
+ * configured patterns.
+ */
+class CompiledPatterns {
+
+    /** constructs which would break if the pattern is embedded in an alternation with other patterns */
+    protected static final Pattern NOT_COMBINABLE = Pattern.compile("\\\\[1-9]|\\\\k<|\\(\\?<[a-zA-Z]");
+
+    protected static class Node {
+
+        protected final Map<Character, Node> children = new HashMap<>();
+        protected final List<String> rules = new ArrayList<>();
+
+        /** the alternation of all combinable rules of this node */
+        protected Pattern combined;
+        /** the rules which have to be checked separately */
+        protected final List<Pattern> separate = new ArrayList<>();
+
+        protected void compile() {
+            StringBuilder alternation = new StringBuilder();
+            for (String rule : rules) {
+                if (NOT_COMBINABLE.matcher(rule).find()) {
+                    separate.add(Pattern.compile(rule));
+                } else {
+                    Pattern.compile(rule); // ensures the usual exception for an invalid rule
+                    if (alternation.length() > 0) {
+                        alternation.append('|');
+                    }
+                    alternation.append("(?:").append(rule).append(')');
+                }
+            }
+            combined = alternation.length() > 0 ? Pattern.compile(alternation.toString()) : null;
+            for (Node child : children.values()) {
+                child.compile();
+            }
+        }
+
+        protected boolean matches(@NotNull final String value) {
+            if (combined != null && combined.matcher(value).matches()) {
+                return true;
+            }
+            for (Pattern pattern : separate) {
+                if (pattern.matcher(value).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    protected final Node root = new Node();
+    protected final int size;
+
+    public CompiledPatterns(@Nullable final String[] rules) {
+        int count = 0;
+        if (rules != null) {
+            for (String rule : rules) {
+                if (StringUtils.isNotBlank(rule = rule.trim())) {
+                    Node node = root;
+                    for (char chr : literalPrefix(rule).toCharArray()) {
+                        node = node.children.computeIfAbsent(chr, (c) -> new Node());
+                    }
+                    node.rules.add(rule);
+                    count++;
+                }
+            }
+        }
+        size = count;
+        root.compile();
+    }
+
+    /**
+     * @return 'true' if the value matches (completely) any of the patterns
+     */
+    public boolean matches(@NotNull final String value) {
+        if (size > 0) {
+            Node node = root;
+            if (node.matches(value)) {
+                return true;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                if ((node = node.children.get(value.charAt(i))) == null) {
+                    break;
+                }
+                if (node.matches(value)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the literal text each value matching the rule has to start with; empty if the rule doesn't start
+     * with a literal or contains a top level alternation
+     */
+    @NotNull
+    protected static String literalPrefix(@NotNull final String rule) {
+        if (hasTopLevelAlternation(rule)) {
+            return "";
+        }
+        StringBuilder prefix = new StringBuilder();
+        int i = rule.startsWith("^") ? 1 : 0;
+        while (i < rule.length()) {
+            char chr = rule.charAt(i);
+            int next;
+            if (chr == '\\') {
+                if (i + 1 >= rule.length() || Character.isLetterOrDigit(rule.charAt(i + 1))) {
+                    break; // a character class or quotation
+                }
+                chr = rule.charAt(i + 1);
+                next = i + 2;
+            } else if (".[]()*+?{}|$^".indexOf(chr) >= 0) {
+                break;
+            } else {
+                next = i + 1;
+            }
+            if (next < rule.length() && "?*{".indexOf(rule.charAt(next)) >= 0) {
+                break; // the character is optional
+            }
+            prefix.append(chr);
+            i = next;
+        }
+        return prefix.toString();
+    }
+
+    protected static boolean hasTopLevelAlternation(@NotNull final String rule) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < rule.length(); i++) {
+            char chr = rule.charAt(i);
+            if (chr == '\\') {
+                i++;
+            } else if (inClass) {
+                if (chr == ']') {
+                    inClass = false;
+                }
+            } else if (chr == '[') {
+                inClass = true;
+            } else if (chr == '(') {
+                depth++;
+            } else if (chr == ')') {
+                depth--;
+            } else if (chr == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
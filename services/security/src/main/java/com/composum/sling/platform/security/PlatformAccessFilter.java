@@ -6,6 +6,7 @@
 package com.composum.sling.platform.security;
 
 import com.composum.platform.commons.request.AccessMode;
+import com.composum.platform.commons.util.LruCache;
 import com.composum.sling.core.util.LinkMapper;
 import com.composum.sling.core.util.LinkUtil;
 import org.apache.commons.lang3.StringUtils;
@@ -14,7 +15,6 @@ import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.auth.Authenticator;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
-import org.apache.sling.commons.osgi.PropertiesUtil;
 import org.apache.sling.settings.SlingSettingsService;
 import org.osgi.framework.Constants;
 import org.osgi.service.component.annotations.Activate;
@@ -39,13 +39,13 @@ import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 import static com.composum.platform.commons.request.AccessMode.ACCESS_MODE_AUTHOR;
 import static com.composum.platform.commons.request.AccessMode.ACCESS_MODE_PREVIEW;
@@ -70,6 +70,10 @@ public class PlatformAccessFilter implements Filter, PlatformAccessService {
     // access filter keys
     public static final String ACCESS_MODE_PARAM = "cpm.access";
 
+    /** the cookie and the header which can transport a signed access mode token instead of the session */
+    public static final String ACCESS_MODE_COOKIE = "cpm-access";
+    public static final String ACCESS_MODE_HEADER = "X-Composum-Access";
+
     @ObjectClassDefinition(
             name = "Composum Platform Access Filter Configuration",
             description = "If enabled, this filter distinguishes between author, preview and public hosts and" +
@@ -205,6 +209,32 @@ public class PlatformAccessFilter implements Filter, PlatformAccessService {
                 "^.*/(rep:policy)(/.*)?$"
         };
 
+        @AttributeDefinition(
+                name = "Session-free Hosts",
+                description = "hostname patterns of hosts which keep a chosen access mode in a signed cookie"
+                        + " (or header '" + ACCESS_MODE_HEADER + "') instead of the HTTP session"
+        )
+        String[] sessionfree_host_patterns() default {};
+
+        @AttributeDefinition(
+                name = "Access Mode Token Secret",
+                description = "the secret to sign the access mode cookies; should be the same on all cluster nodes,"
+                        + " if empty a random key is used which is valid until the next restart"
+        )
+        String access_mode_token_secret() default "";
+
+        @AttributeDefinition(
+                name = "Access Mode Token Max Age",
+                description = "the validity of a signed access mode cookie in seconds"
+        )
+        int access_mode_token_max_age() default 43200;
+
+        @AttributeDefinition(
+                name = "Decision Cache Size",
+                description = "the maximum number of cached access decisions (by access mode, path and URI); '0' disables the cache"
+        )
+        int decision_cache_size() default 2000;
+
         @AttributeDefinition(
                 name = "Service Ranking",
                 description = "the ranking of the service to place the servlet filter at the right place in the filter chain"
@@ -222,23 +252,54 @@ public class PlatformAccessFilter implements Filter, PlatformAccessService {
     private volatile PlatformAccessFilterAuthPlugin authPlugin;
 
     /**
-     * the configuration patterns transformed into Pattern lists...
+     * the configuration patterns compiled into pattern matchers...
+     */
+    private CompiledPatterns authorHostPatterns;
+    private CompiledPatterns authorUriPatterns;
+    private CompiledPatterns authorAllowAnonUriPatterns;
+    private CompiledPatterns authorAllowUriPatterns;
+    private CompiledPatterns authorAllowPathPatterns;
+    private CompiledPatterns authorDenyUriPatterns;
+    private CompiledPatterns authorDenyPathPatterns;
+    private CompiledPatterns publicAllowUriPatterns;
+    private CompiledPatterns publicAllowPathPatterns;
+    private CompiledPatterns publicDenyUriPatterns;
+    private CompiledPatterns publicDenyPathPatterns;
+    private CompiledPatterns previewHostPatterns;
+
+    /**
+     * the host type determined by the Sling runmodes at activation time ('null' if the runmodes don't decide)
+     */
+    private AccessMode runmodeAccessMode;
+
+    /**
+     * the access decisions of the pattern lists by 'mode|path|uri' and the host types by host name
+     */
+    private LruCache<List<Object>, AccessDecision> decisionCache;
+    private LruCache<String, AccessMode> hostCache;
+
+    /**
+     * the hosts which transport the access mode in a signed token instead of the session
      */
-    private List<Pattern> authorHostPatterns;
-    private List<Pattern> authorUriPatterns;
-    private List<Pattern> authorAllowAnonUriPatterns;
-    private List<Pattern> authorAllowUriPatterns;
-    private List<Pattern> authorAllowPathPatterns;
-    private List<Pattern> authorDenyUriPatterns;
-    private List<Pattern> authorDenyPathPatterns;
-    private List<Pattern> publicAllowUriPatterns;
-    private List<Pattern> publicAllowPathPatterns;
-    private List<Pattern> publicDenyUriPatterns;
-    private List<Pattern> publicDenyPathPatterns;
-    private List<Pattern> previewHostPatterns;
+    private CompiledPatterns sessionfreeHostPatterns;
+    private SignedAccessModeToken accessModeToken;
 
     private Config config;
 
+    /**
+     * the result of the check of a path and an URI against the pattern lists of an access mode
+     */
+    protected enum AccessDecision {
+        /** access allowed, for author access the user must be authenticated */
+        ALLOW,
+        /** access allowed also for anonymous users (author access) */
+        ALLOW_ANONYMOUS,
+        /** rejected by the path patterns */
+        DENY_PATH,
+        /** rejected by the URI patterns */
+        DENY_URI
+    }
+
     /**
      * a thread local state object to make the requests context available in resolver-less interface methods
      */
@@ -361,13 +422,15 @@ public class PlatformAccessFilter implements Filter, PlatformAccessService {
                 Boolean isInternalRequest = (Boolean) request.getAttribute(RA_IS_INTERNAL_REQUEST);
                 if (isInternalRequest == null || !isInternalRequest) {
 
-                    if (isAccessDenied(path, true, publicAllowPathPatterns, publicDenyPathPatterns)) {
+                    AccessDecision decision = getAccessDecision(accessMode, path, uri);
+
+                    if (decision == AccessDecision.DENY_PATH) {
                         LOG.warn("REJECT(path): '" + path + "' by public path patterns!");
                         sendError(slingResponse, SlingHttpServletResponse.SC_NOT_FOUND);
                         return;
                     }
 
-                    if (isAccessDenied(uri, true, publicAllowUriPatterns, publicDenyUriPatterns)) {
+                    if (decision == AccessDecision.DENY_URI) {
                         LOG.warn("REJECT(URI): '" + uri + "' by public URI patterns!");
                         sendError(slingResponse, SlingHttpServletResponse.SC_NOT_FOUND);
                         return;
@@ -380,13 +443,15 @@ public class PlatformAccessFilter implements Filter, PlatformAccessService {
 
             } else {
 
-                if (isAccessDenied(path, true, authorAllowPathPatterns, authorDenyPathPatterns)) {
+                AccessDecision decision = getAccessDecision(accessMode, path, uri);
+
+                if (decision == AccessDecision.DENY_PATH) {
                     LOG.warn("REJECT(path): '" + path + "' by author path patterns!");
                     sendError(slingResponse, SlingHttpServletResponse.SC_NOT_FOUND);
                     return;
                 }
 
-                if (isAccessDenied(uri, true, authorAllowUriPatterns, authorDenyUriPatterns)) {
+                if (decision == AccessDecision.DENY_URI) {
                     LOG.warn("REJECT(URI): '" + uri + "' by author URI patterns!");
                     sendError(slingResponse, SlingHttpServletResponse.SC_NOT_FOUND);
                     return;
@@ -400,7 +465,7 @@ public class PlatformAccessFilter implements Filter, PlatformAccessService {
                     String userId = session.getUserID();
                     if (userId == null || "anonymous".equalsIgnoreCase(userId)) {
 
-                        if (isAccessDenied(uri, false, authorAllowAnonUriPatterns, null)) {
+                        if (decision != AccessDecision.ALLOW_ANONYMOUS) {
                             if (triggerAuthentication(slingRequest, slingResponse, chain,
                                     "REJECT(anon): '{}' by anonymous URI patterns!", uri)) {
                                 return;
@@ -452,11 +517,23 @@ public class PlatformAccessFilter implements Filter, PlatformAccessService {
         if (value != null) {
             if (isAuthorHost(request)) {
                 accessMode = value;
-                HttpSession httpSession = request.getSession(true);
-                if (httpSession != null) {
-                    httpSession.setAttribute(RA_ACCESS_MODE, accessMode);
+                if (isSessionfreeHost(request)) {
+                    Cookie cookie = new Cookie(ACCESS_MODE_COOKIE, accessModeToken.create(accessMode));
+                    cookie.setPath(StringUtils.defaultIfBlank(request.getContextPath(), "/"));
+                    cookie.setMaxAge((int) accessModeToken.getMaxAgeSeconds());
+                    cookie.setHttpOnly(true);
+                    cookie.setSecure(request.isSecure());
+                    response.addCookie(cookie);
                     if (LOG.isInfoEnabled()) {
-                        LOG.info("session access mode (" + RA_ACCESS_MODE + ") set to: " + accessMode);
+                        LOG.info("cookie access mode (" + ACCESS_MODE_COOKIE + ") set to: " + accessMode);
+                    }
+                } else {
+                    HttpSession httpSession = request.getSession(true);
+                    if (httpSession != null) {
+                        httpSession.setAttribute(RA_ACCESS_MODE, accessMode);
+                        if (LOG.isInfoEnabled()) {
+                            LOG.info("session access mode (" + RA_ACCESS_MODE + ") set to: " + accessMode);
+                        }
                     }
                 }
             }
@@ -466,12 +543,15 @@ public class PlatformAccessFilter implements Filter, PlatformAccessService {
             if (!isAuthorUri(request)) {
                 // uses session state only if it's not an author URI like '/bin/pages/...'
                 // otherwise you can lost the editing context for a session
-                HttpSession httpSession = request.getSession(false);
-                if (httpSession != null) {
-                    value = AccessMode.accessModeValue(httpSession.getAttribute(RA_ACCESS_MODE));
-                    if (value != null && isAuthorHost(request)) {
-                        accessMode = value;
-                    }
+                if (isSessionfreeHost(request)) {
+                    value = getTokenAccessMode(request);
+                } else {
+                    HttpSession httpSession = request.getSession(false);
+                    value = httpSession != null
+                            ? AccessMode.accessModeValue(httpSession.getAttribute(RA_ACCESS_MODE)) : null;
+                }
+                if (value != null && isAuthorHost(request)) {
+                    accessMode = value;
                 }
             }
         }
@@ -488,77 +568,105 @@ public class PlatformAccessFilter implements Filter, PlatformAccessService {
     }
 
     private boolean isAuthorHost(SlingHttpServletRequest request) {
-        if (config.honor_sling_runmode()) {
-            Set<String> runmodes = slingSettings.getRunModes();
-            for (String runmode : runmodes) {
-                if (ACCESS_MODE_AUTHOR.equalsIgnoreCase(runmode)) {
-                    return true;
-                } else if (ACCESS_MODE_PUBLIC.equalsIgnoreCase(runmode)
-                        || ACCESS_MODE_PREVIEW.equalsIgnoreCase(runmode)) {
-                    return false;
-                }
-            }
-        }
-        String host = request.getServerName();
-        for (Pattern pattern : authorHostPatterns) {
-            if (pattern.matcher(host).matches()) {
-                return true;
+        return getHostAccessMode(request) == AccessMode.AUTHOR;
+    }
+
+    private boolean isSessionfreeHost(SlingHttpServletRequest request) {
+        return !sessionfreeHostPatterns.isEmpty()
+                && sessionfreeHostPatterns.matches(StringUtils.defaultString(request.getServerName()));
+    }
+
+    /**
+     * @return the access mode of a valid signed token of the request (header or cookie)
+     */
+    @Nullable
+    private AccessMode getTokenAccessMode(SlingHttpServletRequest request) {
+        AccessMode value = accessModeToken.validate(request.getHeader(ACCESS_MODE_HEADER));
+        if (value == null) {
+            Cookie cookie = request.getCookie(ACCESS_MODE_COOKIE);
+            if (cookie != null) {
+                value = accessModeToken.validate(cookie.getValue());
             }
         }
-        return false;
+        return value;
     }
 
     private boolean isPreviewHost(SlingHttpServletRequest request) {
-        if (config.honor_sling_runmode()) {
-            Set<String> runmodes = slingSettings.getRunModes();
-            for (String runmode : runmodes) {
-                if (ACCESS_MODE_PREVIEW.equalsIgnoreCase(runmode)) {
-                    return true;
-                } else if (ACCESS_MODE_PUBLIC.equalsIgnoreCase(runmode)
-                        || ACCESS_MODE_AUTHOR.equalsIgnoreCase(runmode)) {
-                    return false;
-                }
-            }
-        }
-        String host = request.getServerName();
-        for (Pattern pattern : previewHostPatterns) {
-            if (pattern.matcher(host).matches()) {
-                return true;
+        return getHostAccessMode(request) == AccessMode.PREVIEW;
+    }
+
+    /**
+     * @return the access mode of the requests host - determined by the runmodes or the host patterns
+     */
+    @NotNull
+    private AccessMode getHostAccessMode(SlingHttpServletRequest request) {
+        if (runmodeAccessMode != null) {
+            return runmodeAccessMode;
+        }
+        String host = StringUtils.defaultString(request.getServerName());
+        AccessMode hostMode = hostCache.get(host);
+        if (hostMode == null) {
+            if (authorHostPatterns.matches(host)) {
+                hostMode = AccessMode.AUTHOR;
+            } else if (previewHostPatterns.matches(host)) {
+                hostMode = AccessMode.PREVIEW;
+            } else {
+                hostMode = AccessMode.PUBLIC;
             }
+            hostCache.put(host, hostMode);
         }
-        return false;
+        return hostMode;
     }
 
     private boolean isAuthorUri(SlingHttpServletRequest request) {
         String uri = request.getRequestURI();
-        for (Pattern pattern : authorUriPatterns) {
-            if (pattern.matcher(uri).matches()) {
-                return true;
+        return uri != null && authorUriPatterns.matches(uri);
+    }
+
+    /**
+     * @return the (cached) decision of the pattern lists for the path and URI in the given access mode
+     */
+    @NotNull
+    protected AccessDecision getAccessDecision(@NotNull AccessMode accessMode,
+                                               @NotNull String path, @NotNull String uri) {
+        List<Object> key = Arrays.asList(accessMode, path, uri);
+        AccessDecision decision = decisionCache.get(key);
+        if (decision == null) {
+            if (accessMode == AccessMode.PUBLIC) {
+                if (isAccessDenied(path, true, publicAllowPathPatterns, publicDenyPathPatterns)) {
+                    decision = AccessDecision.DENY_PATH;
+                } else if (isAccessDenied(uri, true, publicAllowUriPatterns, publicDenyUriPatterns)) {
+                    decision = AccessDecision.DENY_URI;
+                } else {
+                    decision = AccessDecision.ALLOW;
+                }
+            } else {
+                if (isAccessDenied(path, true, authorAllowPathPatterns, authorDenyPathPatterns)) {
+                    decision = AccessDecision.DENY_PATH;
+                } else if (isAccessDenied(uri, true, authorAllowUriPatterns, authorDenyUriPatterns)) {
+                    decision = AccessDecision.DENY_URI;
+                } else if (!isAccessDenied(uri, false, authorAllowAnonUriPatterns, null)) {
+                    decision = AccessDecision.ALLOW_ANONYMOUS;
+                } else {
+                    decision = AccessDecision.ALLOW;
+                }
             }
+            decisionCache.put(key, decision);
         }
-        return false;
+        return decision;
     }
 
-    @SuppressWarnings("Duplicates")
     private boolean isAccessDenied(String path, boolean defaultValue,
-                                   List<Pattern> allow, List<Pattern> deny) {
+                                   CompiledPatterns allow, CompiledPatterns deny) {
 
         if (StringUtils.isNotBlank(path)) {
 
-            if (allow != null) {
-                for (Pattern pattern : allow) {
-                    if (pattern.matcher(path).matches()) {
-                        return false;
-                    }
-                }
+            if (allow != null && allow.matches(path)) {
+                return false;
             }
 
-            if (deny != null) {
-                for (Pattern pattern : deny) {
-                    if (pattern.matcher(path).matches()) {
-                        return true;
-                    }
-                }
+            if (deny != null && deny.matches(path)) {
+                return true;
             }
         }
 
@@ -582,55 +690,38 @@ public class PlatformAccessFilter implements Filter, PlatformAccessService {
     @Modified
     public final void activate(final Config config) {
         this.config = config;
-        authorHostPatterns = new ArrayList<>();
-        for (String rule : PropertiesUtil.toStringArray(config.author_host_patterns())) {
-            if (StringUtils.isNotBlank(rule = rule.trim())) authorHostPatterns.add(Pattern.compile(rule));
-        }
-        previewHostPatterns = new ArrayList<>();
-        for (String rule : PropertiesUtil.toStringArray(config.preview_host_patterns())) {
-            if (StringUtils.isNotBlank(rule = rule.trim())) {
-                previewHostPatterns.add(Pattern.compile(rule));
+        authorHostPatterns = new CompiledPatterns(config.author_host_patterns());
+        previewHostPatterns = new CompiledPatterns(config.preview_host_patterns());
+        authorUriPatterns = new CompiledPatterns(config.author_uri_patterns());
+        authorAllowAnonUriPatterns = new CompiledPatterns(config.author_allow_anonymous());
+        authorAllowUriPatterns = new CompiledPatterns(config.author_uri_allow());
+        authorAllowPathPatterns = new CompiledPatterns(config.author_path_allow());
+        authorDenyUriPatterns = new CompiledPatterns(config.author_uri_deny());
+        authorDenyPathPatterns = new CompiledPatterns(config.author_path_deny());
+        publicAllowUriPatterns = new CompiledPatterns(config.public_uri_allow());
+        publicAllowPathPatterns = new CompiledPatterns(config.public_path_allow());
+        publicDenyUriPatterns = new CompiledPatterns(config.public_uri_deny());
+        publicDenyPathPatterns = new CompiledPatterns(config.public_path_deny());
+        runmodeAccessMode = null;
+        if (config.honor_sling_runmode()) {
+            Set<String> runmodes = slingSettings.getRunModes();
+            for (String runmode : runmodes) {
+                if (ACCESS_MODE_AUTHOR.equalsIgnoreCase(runmode)) {
+                    runmodeAccessMode = AccessMode.AUTHOR;
+                    break;
+                } else if (ACCESS_MODE_PREVIEW.equalsIgnoreCase(runmode)) {
+                    runmodeAccessMode = AccessMode.PREVIEW;
+                    break;
+                } else if (ACCESS_MODE_PUBLIC.equalsIgnoreCase(runmode)) {
+                    runmodeAccessMode = AccessMode.PUBLIC;
+                    break;
+                }
             }
         }
-        authorUriPatterns = new ArrayList<>();
-        for (String rule : PropertiesUtil.toStringArray(config.author_uri_patterns())) {
-            if (StringUtils.isNotBlank(rule = rule.trim())) authorUriPatterns.add(Pattern.compile(rule));
-        }
-        authorAllowAnonUriPatterns = new ArrayList<>();
-        for (String rule : PropertiesUtil.toStringArray(config.author_allow_anonymous())) {
-            if (StringUtils.isNotBlank(rule = rule.trim())) authorAllowAnonUriPatterns.add(Pattern.compile(rule));
-        }
-        authorAllowUriPatterns = new ArrayList<>();
-        for (String rule : PropertiesUtil.toStringArray(config.author_uri_allow())) {
-            if (StringUtils.isNotBlank(rule = rule.trim())) authorAllowUriPatterns.add(Pattern.compile(rule));
-        }
-        authorAllowPathPatterns = new ArrayList<>();
-        for (String rule : PropertiesUtil.toStringArray(config.author_path_allow())) {
-            if (StringUtils.isNotBlank(rule = rule.trim())) authorAllowPathPatterns.add(Pattern.compile(rule));
-        }
-        authorDenyUriPatterns = new ArrayList<>();
-        for (String rule : PropertiesUtil.toStringArray(config.author_uri_deny())) {
-            if (StringUtils.isNotBlank(rule = rule.trim())) authorDenyUriPatterns.add(Pattern.compile(rule));
-        }
-        authorDenyPathPatterns = new ArrayList<>();
-        for (String rule : PropertiesUtil.toStringArray(config.author_path_deny())) {
-            if (StringUtils.isNotBlank(rule = rule.trim())) authorDenyPathPatterns.add(Pattern.compile(rule));
-        }
-        publicAllowUriPatterns = new ArrayList<>();
-        for (String rule : PropertiesUtil.toStringArray(config.public_uri_allow())) {
-            if (StringUtils.isNotBlank(rule = rule.trim())) publicAllowUriPatterns.add(Pattern.compile(rule));
-        }
-        publicAllowPathPatterns = new ArrayList<>();
-        for (String rule : PropertiesUtil.toStringArray(config.public_path_allow())) {
-            if (StringUtils.isNotBlank(rule = rule.trim())) publicAllowPathPatterns.add(Pattern.compile(rule));
-        }
-        publicDenyUriPatterns = new ArrayList<>();
-        for (String rule : PropertiesUtil.toStringArray(config.public_uri_deny())) {
-            if (StringUtils.isNotBlank(rule = rule.trim())) publicDenyUriPatterns.add(Pattern.compile(rule));
-        }
-        publicDenyPathPatterns = new ArrayList<>();
-        for (String rule : PropertiesUtil.toStringArray(config.public_path_deny())) {
-            if (StringUtils.isNotBlank(rule = rule.trim())) publicDenyPathPatterns.add(Pattern.compile(rule));
-        }
+        sessionfreeHostPatterns = new CompiledPatterns(config.sessionfree_host_patterns());
+        accessModeToken = new SignedAccessModeToken(config.access_mode_token_secret(),
+                config.access_mode_token_max_age());
+        decisionCache = new LruCache<>(config.decision_cache_size());
+        hostCache = new LruCache<>(Math.min(config.decision_cache_size(), 100));
     }
 }
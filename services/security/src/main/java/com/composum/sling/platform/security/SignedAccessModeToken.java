@@ -0,0 +1,118 @@
+/*
+ * copyright (c) 2015ff IST GmbH Dresden, Germany - https://www.ist-software.com
+ *
+ * This software may be modified and distributed under the terms of the MIT license.
+ */
+package com.composum.sling.platform.security;
+
+import com.composum.platform.commons.request.AccessMode;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Creates and validates the compact, HMAC signed tokens which transport the access mode in a cookie or header
+ * instead of a HTTP session: '{mode}.{expiry}.{signature}' with the expiry in seconds (radix 36) and a truncated
+ * HMAC-SHA256 signature (base64url). The key is prepared once; the (not thread safe) MAC instances are kept per thread.
+ */
+class SignedAccessModeToken {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SignedAccessModeToken.class);
+
+    public static final String ALGORITHM = "HmacSHA256";
+
+    /** the number of signature bytes used in the token */
+    public static final int SIGNATURE_LENGTH = 16;
+
+    protected final SecretKeySpec key;
+    protected final long maxAgeSeconds;
+
+    protected final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::createMac);
+
+    /**
+     * @param secret        the shared secret; if blank a random key is used which makes all tokens invalid
+     *                      after a restart and on other cluster nodes
+     * @param maxAgeSeconds the validity of a created token
+     */
+    public SignedAccessModeToken(@Nullable final String secret, long maxAgeSeconds) {
+        byte[] keyBytes;
+        if (StringUtils.isNotBlank(secret)) {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        } else {
+            LOG.info("no access mode token secret configured - using a random key");
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+        }
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    /**
+     * @return a signed token for the access mode valid for the configured time
+     */
+    @NotNull
+    public String create(@NotNull final AccessMode accessMode) {
+        String payload = accessMode.name() + "." +
+                Long.toString(System.currentTimeMillis() / 1000L + maxAgeSeconds, Character.MAX_RADIX);
+        return payload + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(sign(payload));
+    }
+
+    /**
+     * @return the access mode of the token if the token is valid (signature and expiry), otherwise 'null'
+     */
+    @Nullable
+    public AccessMode validate(@Nullable final String token) {
+        if (StringUtils.isNotBlank(token)) {
+            int signatureStart = token.lastIndexOf('.');
+            int expiryStart = signatureStart > 0 ? token.lastIndexOf('.', signatureStart - 1) : -1;
+            if (expiryStart > 0) {
+                String payload = token.substring(0, signatureStart);
+                try {
+                    byte[] signature = Base64.getUrlDecoder().decode(token.substring(signatureStart + 1));
+                    if (MessageDigest.isEqual(signature, sign(payload))) {
+                        long expiry = Long.parseLong(token.substring(expiryStart + 1, signatureStart),
+                                Character.MAX_RADIX);
+                        if (expiry * 1000L >= System.currentTimeMillis()) {
+                            return AccessMode.accessModeValue(token.substring(0, expiryStart));
+                        }
+                    }
+                } catch (IllegalArgumentException ex) { // also NumberFormatException
+                    LOG.debug("invalid access mode token '{}'", token);
+                }
+            }
+        }
+        return null;
+    }
+
+    public long getMaxAgeSeconds() {
+        return maxAgeSeconds;
+    }
+
+    @NotNull
+    protected byte[] sign(@NotNull final String payload) {
+        byte[] hash = macs.get().doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        return Arrays.copyOf(hash, SIGNATURE_LENGTH);
+    }
+
+    @NotNull
+    protected Mac createMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
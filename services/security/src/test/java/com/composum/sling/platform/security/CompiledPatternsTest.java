@@ -0,0 +1,115 @@
+package com.composum.sling.platform.security;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link CompiledPatterns} matches exactly what {@link Pattern#matches(String, CharSequence)} with any of
+ * the rules matches.
+ */
+public class CompiledPatternsTest {
+
+    /** Values to check the default configuration of the {@link PlatformAccessFilter} with. */
+    protected static final String[] VALUES = {
+            "", "/", "localhost", "localhost.example.com", "192.168.1.12", "192.168.1", "172.16.0.1", "10.0.0.1",
+            "10.0.0", "apps", "apps.example.com", "author", "author.example.com", "authority.example.com",
+            "preview", "preview.example.com", "www.example.com",
+            "/bin/browser.html", "/bin/public/clientlibs.min.css", "/bin/public/clientlibs.js/x/y.js",
+            "/bin/public/clientlibs.json", "/bin/cpm/platform/auth/sessionTransferCallback",
+            "/bin/cpm/platform/auth/sessionTransferCallbackX", "/bin/cpm/nodes/node.tree.json/content",
+            "/apps/site/style.css", "/apps/site/style.less", "/apps/site/font.woff", "/apps/site/font.woff2",
+            "/apps/site/font.woff3", "/libs/jslibs/jquery.js", "/libs/x.map", "/libs/fonts/a.eot", "/fonts/a.ttf",
+            "/libs/login.html", "/libs/composum/platform/public/login/page.png", "/libs/composum/platform/login.js",
+            "/j_security_check", "/j_security_checkX", "/favicon.ico", "/faviconXico", "/robots.txt",
+            "/sitemap.robots.txt", "/sitemap.xml", "/sitemapXxml", "/content/site/page.html",
+            "/content/site/page.json", "/content/site/page.explorer.html", "/content/site/rep:policy",
+            "/content/site/rep:policy/allow", "/servlet", "/servlet/x", "/servlets", "/system/console",
+            "/etc", "/etc/clientlibs", "/etcetera", "/home/users", "/jcr:system", "/oak:index/uuid", "/sightly/x",
+            "/libs/sling/servlet/errorhandler/404.jsp", "/libs/themes/a/b", "/libs/themesX/a"
+    };
+
+    @Test
+    public void defaultConfiguration() throws Exception {
+        List<String> allRules = new ArrayList<>();
+        for (Method method : PlatformAccessFilter.Config.class.getDeclaredMethods()) {
+            if (method.getReturnType() == String[].class && method.getDefaultValue() != null) {
+                String[] rules = (String[]) method.getDefaultValue();
+                checkAgainstPatterns(method.getName(), rules, VALUES);
+                allRules.addAll(Arrays.asList(rules));
+            }
+        }
+        assertFalse(allRules.isEmpty());
+        checkAgainstPatterns("all", allRules.toArray(new String[0]), VALUES);
+        for (String rule : allRules) {
+            checkAgainstPatterns(rule, new String[]{rule}, VALUES);
+        }
+    }
+
+    @Test
+    public void anchoredAndUnanchored() {
+        String[] rules = {"^/content/.*$", "/apps/.*", "^/libs/.*", "/etc/.*$", "/exact"};
+        String[] values = {"/content/x", "/content", "x/content/x", "/apps/a", "/apps", "/libs/l", "/etc/e", "/etc",
+                "/exact", "/exactly", "/exac", "/"};
+        checkAgainstPatterns("anchors", rules, values);
+        CompiledPatterns patterns = new CompiledPatterns(rules);
+        assertTrue(patterns.matches("/exact"));
+        assertFalse(patterns.matches("/exactly"));
+        assertFalse(patterns.matches("x/content/x"));
+    }
+
+    @Test
+    public void alternations() {
+        String[] rules = {"^/a/x|/b/y$", "^/(c|d)/z$", "/e(/f|/g)?", "h|^/i"};
+        String[] values = {"/a/x", "/b/y", "/a/y", "/c/z", "/d/z", "/cd/z", "/e", "/e/f", "/e/g", "/e/h", "h", "/i",
+                "/h", "hi", ""};
+        checkAgainstPatterns("alternations", rules, values);
+    }
+
+    @Test
+    public void characterClassesAndEscapes() {
+        String[] rules = {"^/[a-c]+/x$", "/[^/]*\\.json", "/\\d{2}/n", "/w\\w+", "\\Q/q.q\\E/.*", "/s\\.t",
+                "/[|(]/p", "/o?/opt", "/star*", "/plus+x", "/brace{2}y", "/back\\\\slash"};
+        String[] values = {"/abc/x", "/d/x", "/a/x", "/x.json", "/a/x.json", "/12/n", "/1/n", "/wab", "/w",
+                "/q.q/z", "/qxq/z", "/s.t", "/sxt", "/|/p", "/(/p", "/a/p", "/opt", "/o/opt", "//opt", "/sta",
+                "/starrr", "/plusx", "/plusssx", "/pluxx", "/braceey", "/bracey", "/back\\slash", "/backslash"};
+        checkAgainstPatterns("classes", rules, values);
+    }
+
+    @Test
+    public void backReferences() {
+        String[] rules = {"/(a|b)\\1", "/(?<n>c)\\k<n>", "/plain"};
+        String[] values = {"/aa", "/ab", "/bb", "/cc", "/cd", "/plain", "/plai"};
+        checkAgainstPatterns("backreferences", rules, values);
+    }
+
+    @Test
+    public void emptyRules() {
+        assertTrue(new CompiledPatterns(null).isEmpty());
+        assertTrue(new CompiledPatterns(new String[]{"", "  "}).isEmpty());
+        assertFalse(new CompiledPatterns(new String[]{"", "  "}).matches(""));
+        assertFalse(new CompiledPatterns(new String[]{" /x "}).isEmpty());
+        assertTrue(new CompiledPatterns(new String[]{" /x "}).matches("/x"));
+    }
+
+    protected void checkAgainstPatterns(String description, String[] rules, String[] values) {
+        CompiledPatterns compiled = new CompiledPatterns(rules);
+        for (String value : values) {
+            boolean expected = false;
+            for (String rule : rules) {
+                if (!rule.trim().isEmpty() && Pattern.matches(rule.trim(), value)) {
+                    expected = true;
+                }
+            }
+            assertEquals(description + " : " + value, expected, compiled.matches(value));
+        }
+    }
+}
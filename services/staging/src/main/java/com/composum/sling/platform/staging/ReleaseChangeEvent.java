@@ -45,6 +45,22 @@ public final class ReleaseChangeEvent {
         return res;
     }
 
+    /**
+     * A copy of this event for the same release, but read with another resolver - e.g. to process it in another thread
+     * after the resolver of this event's release was closed.
+     */
+    @NotNull
+    public ReleaseChangeEvent copyFor(@NotNull Release sameRelease) {
+        ReleaseChangeEvent copy = new ReleaseChangeEvent(sameRelease);
+        copy.newResources.addAll(newResources);
+        copy.updatedResources.addAll(updatedResources);
+        copy.movedResources.putAll(movedResources);
+        copy.removedResources.addAll(removedResources);
+        copy.forceCheck = forceCheck;
+        copy.finalized = finalized;
+        return copy;
+    }
+
     /**
      * The release in which the items have been activated or deactivated.
      */
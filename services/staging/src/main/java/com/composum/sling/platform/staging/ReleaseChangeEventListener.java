@@ -38,6 +38,9 @@ public interface ReleaseChangeEventListener {
      * This informs the replication service about an activation / deactivation / update. The publisher can decide on his own
      * whether he is responsible. The processing should be synchronous, so that the user can be notified whether it succeeded or not.
      * CAUTION: the changes can also encompass the attributes and node order of parent nodes of the resources transmitted in the event.
+     * If the publisher is configured to call the listeners asynchronously, this is called in a background thread with
+     * a copy of the event whose {@link ReleaseChangeEvent#release()} is read with a service resolver that is closed
+     * after this returns - don't keep references to its resources. It sees only committed content.
      */
     default void receive(ReleaseChangeEvent releaseChangeEvent) throws ReleaseChangeFailedException {
         // default empty - if processesFor contains the things to do
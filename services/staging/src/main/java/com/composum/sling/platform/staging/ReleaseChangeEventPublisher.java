@@ -10,6 +10,7 @@ import org.jetbrains.annotations.Nullable;
 import java.util.Collection;
 import java.util.EnumMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Service that distributes {@link ReleaseChangeEvent}s among the {@link ReleaseChangeEventListener}s.
@@ -24,6 +25,24 @@ public interface ReleaseChangeEventPublisher {
     void publishActivation(@Nullable ReleaseChangeEvent event)
             throws ReleaseChangeFailedException;
 
+    /**
+     * Like {@link #publishActivation(ReleaseChangeEvent)}, for callers that need to know when the
+     * {@link ReleaseChangeEventListener}s received the event: if the listeners are called asynchronously,
+     * this returns immediately and the returned future completes when all listeners received the event, or
+     * completes exceptionally with a {@link ReleaseChangeFailedException} if a listener failed.
+     */
+    @NotNull
+    default CompletableFuture<Void> publishActivationWithCompletion(@Nullable ReleaseChangeEvent event) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            publishActivation(event);
+            result.complete(null);
+        } catch (ReleaseChangeFailedException | RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
     /**
      * Returns all {@link ReleaseChangeProcess} that apply to the given release.
      *
@@ -141,6 +160,11 @@ public interface ReleaseChangeEventPublisher {
          * Whether the remote release change number is equal to the local one.
          */
         public Boolean isSynchronized;
+        /**
+         * The time {@link #isSynchronized} and {@link #lastReplicationTimestamp} were determined, as in
+         * {@link System#currentTimeMillis()}, if that information is cached.
+         */
+        public Long synchronizedCheckedAt;
         /**
          * Time of last (successful) replication, as in {@link System#currentTimeMillis()}.
          */
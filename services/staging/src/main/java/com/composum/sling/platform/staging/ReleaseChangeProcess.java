@@ -184,6 +184,15 @@ public interface ReleaseChangeProcess {
      */
     void updateSynchronized();
 
+    /**
+     * The time as {@link System#currentTimeMillis()} the information used for {@link #isSynchronized(ResourceResolver)}
+     * and {@link #getLastReplicationTimestamp()} was determined, if that is cached.
+     */
+    @Nullable
+    default Long getSynchronizedCheckedAt() {
+        return null;
+    }
+
     /**
      * This method performs the actual replication processing. This is meant to be automatically called from
      * the internal release change publishing mechanism (specifically {@link com.composum.sling.platform.staging.impl.ReleaseChangeEventPublisherImpl},
@@ -10,6 +10,7 @@ import org.apache.sling.api.resource.ResourceResolver;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import javax.jcr.RepositoryException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -156,6 +157,17 @@ public interface StagingReleaseManager {
     @NotNull
     List<ReleasedVersionable> compareReleases(@NotNull Release release, @Nullable Release previousRelease) throws RepositoryException;
 
+    /**
+     * Like {@link #compareReleases(Release, Release)}, but the changes are determined lazily while iterating, ordered
+     * by the version history uuid, without collecting the contents of both releases first.
+     *
+     * @param release         the release to compare
+     * @param previousRelease optional, a specific release to compare to - see {@link #compareReleases(Release, Release)}
+     * @return the changes
+     */
+    @NotNull
+    Iterator<ReleasedVersionable> compareReleasesLazily(@NotNull Release release, @Nullable Release previousRelease) throws RepositoryException;
+
     /**
      * Lists the current content (in the workspace, not in the current release, using {@link ReleasedVersionable#forBaseVersion(Resource)}).
      * Caution: this finds only committed content.
@@ -259,6 +271,7 @@ public interface StagingReleaseManager {
      * you have to {@link #deleteMark(String, Release)} first.
      * Deleting the {@link StagingConstants#CURRENT_RELEASE} is also possible, though it'll
      * be recreated automatically when calling one of the get / find release methods.
+     * The deletion is committed, since the release labels of the versions in the release are removed afterwards.
      *
      * @param release the release, as given by {@link #findRelease(Resource, String)} or {@link #findReleaseByUuid(Resource, String)}.
      * @throws PersistenceException      can happen e.g. when deleting a release that is referenced somewhere
@@ -300,7 +313,9 @@ public interface StagingReleaseManager {
 
     /**
      * Checks whether the versionables contained below the release root have labels starting with {@link StagingConstants#RELEASE_LABEL_PREFIX}
-     * but aren't in the corresponding release. For internal purposes.
+     * but aren't in the corresponding release. For internal purposes: this scans the whole version storage, so it's
+     * meant as a maintenance operation (the cleanupLabels operation of the staging servlet) - the labels are kept
+     * consistent by the release operations themselves.
      *
      * @param resource the release root or something below it
      * @return number of obsolete labels removed
@@ -68,6 +68,16 @@ public abstract class AbstractStagingResourceResolver implements ResourceResolve
     /** Checks whether the resource is a versionable for which we step into version space. */
     protected abstract Resource stepResource(Resource resource);
 
+    /**
+     * Wraps the children of the underlying resource of a parent (null for children that don't exist);
+     * can be overridden to resolve the children in bulk.
+     */
+    @NotNull
+    protected Iterator<Resource> wrapChildren(@NotNull String parentPath, @NotNull Resource underlyingParent) {
+        return IteratorUtils.transformedIterator(underlyingParent.listChildren(), (r) ->
+                wrapIntoStagingResource(parentPath + "/" + r.getName(), stepResource(r), null, false));
+    }
+
     /** Returns additional wrapped children overlayed to the children of the underlying resource. */
     @Nullable
     protected Iterator<Resource> overlayedChildren(@NotNull Resource parent) {
@@ -92,11 +102,8 @@ public abstract class AbstractStagingResourceResolver implements ResourceResolve
             if (retrieved instanceof StagingResource) stagingResource = (StagingResource) retrieved;
             else return Collections.emptyIterator(); // NonExistingResource
         }
-        Iterator<Resource> children = stagingResource.underlyingResource.listChildren();
         Iterator<Resource> resourceIterator = IteratorUtils.filteredIterator(
-                IteratorUtils.transformedIterator(children, (r) ->
-                        wrapIntoStagingResource(parent.getPath() + "/" + r.getName(), stepResource(r), null, false)
-                ),
+                wrapChildren(parent.getPath(), stagingResource.underlyingResource),
                 (child) -> child != null && !ResourceUtil.isNonExistingResource(child) && !isFiltered(child)
         );
         Iterator<Resource> additionalChildren = this.overlayedChildren(parent);
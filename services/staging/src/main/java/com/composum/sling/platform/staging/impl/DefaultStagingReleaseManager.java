@@ -1,6 +1,7 @@
 package com.composum.sling.platform.staging.impl;
 
 import com.composum.platform.commons.util.JcrIteratorUtil;
+import com.composum.platform.commons.util.LruCache;
 import com.composum.sling.core.ResourceHandle;
 import com.composum.sling.core.util.CoreConstants;
 import com.composum.sling.core.util.ResourceUtil;
@@ -40,6 +41,7 @@ import org.slf4j.LoggerFactory;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import javax.jcr.ItemNotFoundException;
 import javax.jcr.Node;
 import javax.jcr.PathNotFoundException;
 import javax.jcr.Property;
@@ -68,7 +70,10 @@ import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.function.Function;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 import static com.composum.sling.core.util.CoreConstants.JCR_UUID;
@@ -130,6 +135,10 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
     @Reference
     protected ResourceResolverFactory resolverFactory;
 
+    /** Shared metadata of the releases, used for lookups of releases if available. */
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC)
+    protected volatile ReleaseMetadataCache metadataCache;
+
     protected final List<StagingReleaseManagerPlugin> plugins = Collections.synchronizedList(new ArrayList<>());
 
     /**
@@ -137,6 +146,24 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
      */
     protected final Random random = new SecureRandom();
 
+    /**
+     * The builds of the shared {@link ReleasePathIndex}es, by release uuid and user id, since the index contains only
+     * what the user can read; created lazily according to the configuration.
+     */
+    protected volatile LruCache<String, ReleasePathIndexBuild> releasePathIndexes;
+
+    /**
+     * The shared {@link ReleaseContentIndex}es, by release uuid and user id, since the index contains only what the
+     * user can read; created lazily according to the configuration.
+     */
+    protected volatile LruCache<String, ReleaseContentIndex> releaseContentIndexes;
+
+    /** The compiled {@link Configuration#overlayed_nodes()}; created lazily according to the configuration. */
+    protected volatile PathSegmentTrie overlayedNodes;
+
+    /** The compiled {@link Configuration#removed_paths()}; created lazily according to the configuration. */
+    protected volatile PathSegmentTrie removedPaths;
+
     public DefaultStagingReleaseManager() {
     }
 
@@ -162,6 +189,32 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
     @Modified
     public void updateConfig(Configuration configuration) {
         this.configuration = configuration;
+        this.releasePathIndexes = null;
+        this.releaseContentIndexes = null;
+        this.overlayedNodes = null;
+        this.removedPaths = null;
+    }
+
+    /** The {@link Configuration#overlayed_nodes()} compiled for the resolvers. */
+    @NotNull
+    protected PathSegmentTrie getOverlayedNodes() {
+        PathSegmentTrie result = overlayedNodes;
+        if (result == null) {
+            result = new PathSegmentTrie(configuration.overlayed_nodes());
+            overlayedNodes = result;
+        }
+        return result;
+    }
+
+    /** The {@link Configuration#removed_paths()} compiled for the resolvers. */
+    @NotNull
+    protected PathSegmentTrie getRemovedPaths() {
+        PathSegmentTrie result = removedPaths;
+        if (result == null) {
+            result = new PathSegmentTrie(configuration.removed_paths());
+            removedPaths = result;
+        }
+        return result;
     }
 
     @NotNull
@@ -211,6 +264,37 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
         return RELEASE_ROOT_PATH + releaseRoot.getPath() + '/' + NODE_RELEASES;
     }
 
+    /**
+     * The cached paths of the release nodes of a release root, if the {@link ReleaseMetadataCache} is available and
+     * the resolver has no pending changes - these would not be reflected in the cache.
+     */
+    @Nullable
+    protected ReleaseMetadataCache.Snapshot getMetadataSnapshot(@NotNull Resource root) {
+        ReleaseMetadataCache cache = metadataCache;
+        if (cache == null || root.getResourceResolver().hasChanges()) {
+            return null;
+        }
+        return cache.getSnapshot(root.getPath());
+    }
+
+    /**
+     * The release with the given uuid according to the cached metadata. The release node is read with the callers
+     * resolver, so that releases the user cannot read are not returned, and its uuid is compared with the cache
+     * since the cache could lag behind a commit.
+     *
+     * @return the release, or null if the cache is not available or not up to date for this release
+     */
+    @Nullable
+    protected ReleaseImpl findCachedRelease(@NotNull ResourceHandle root, @Nullable String releaseUuid) {
+        ReleaseMetadataCache.Snapshot snapshot = releaseUuid != null ? getMetadataSnapshot(root) : null;
+        String releasePath = snapshot != null ? snapshot.getReleasePath(releaseUuid) : null;
+        Resource releaseNode = releasePath != null ? root.getResourceResolver().getResource(releasePath) : null;
+        if (releaseNode == null || !releaseUuid.equals(releaseNode.getValueMap().get(PROP_UUID, String.class))) {
+            return null;
+        }
+        return new ReleaseImpl(root, releaseNode);
+    }
+
     @NotNull
     protected List<Release> getReleasesImpl(@NotNull Resource resource) {
         List<Release> result = new ArrayList<>();
@@ -316,6 +400,10 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
     @NotNull
     @Override
     public Release findReleaseByUuid(@NotNull Resource resource, @NotNull String releaseUuid) throws ReleaseNotFoundException {
+        ReleaseImpl cachedRelease = findCachedRelease(findReleaseRoot(resource), releaseUuid);
+        if (cachedRelease != null) {
+            return cachedRelease;
+        }
         for (Release release : getReleasesImpl(resource)) {
             if (release.getUuid().equals(releaseUuid)) {
                 return release;
@@ -418,7 +506,6 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
 
     @NotNull
     protected ReleaseImpl createReleaseImpl(ResourceHandle root, ReleaseImpl copyFromRelease, String newReleaseNumber) throws RepositoryException, PersistenceException {
-        cleanupLabels(root);
         ReleaseImpl newRelease = ensureRelease(root, newReleaseNumber);
         if (null != copyFromRelease) {
             new NodeTreeSynchronizer().update(copyFromRelease.getReleaseNode(), newRelease.getReleaseNode());
@@ -442,53 +529,30 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
     @Override
     public List<ReleasedVersionable> listReleaseContents(@NotNull Release rawRelease) {
         ReleaseImpl release = requireNonNull(ReleaseImpl.unwrap(rawRelease));
-        List<ReleasedVersionable> result = new ArrayList<>();
-        Resource releaseWorkspaceCopy = requireNonNull(release.getReleaseNode().getChild(NODE_RELEASE_ROOT));
-        Query query = release.getReleaseRoot()
-                .getResourceResolver()
-                .adaptTo(QueryBuilder.class)
-                .createQuery();
-        query.path(releaseWorkspaceCopy.getPath()).type(TYPE_VERSIONREFERENCE);
-        for (Resource versionReference : query.execute()) {
-            result.add(ReleasedVersionable.fromVersionReference(releaseWorkspaceCopy, versionReference));
-        }
-        return result;
+        requireNonNull(release.getReleaseNode().getChild(NODE_RELEASE_ROOT));
+        return getReleaseContentIndex(release).list();
     }
 
     @NotNull
     @Override
     public List<ReleasedVersionable> compareReleases(@NotNull Release release, @Nullable Release previousRelease) throws RepositoryException {
-        List<ReleasedVersionable> result = new ArrayList<>();
+        return IteratorUtils.toList(compareReleasesLazily(release, previousRelease));
+    }
+
+    @NotNull
+    @Override
+    public Iterator<ReleasedVersionable> compareReleasesLazily(@NotNull Release release, @Nullable Release previousRelease) throws RepositoryException {
         if (previousRelease == null) {
             previousRelease = release.getPreviousRelease();
         }
-
-        if (previousRelease == null) // return everything
-        {
-            return listReleaseContents(release);
-        }
-
-        List<ReleasedVersionable> releaseContents = listReleaseContents(release);
-        Map<String, ReleasedVersionable> releaseByVersionHistory = releaseContents.stream()
-                .collect(Collectors.toMap(ReleasedVersionable::getVersionHistory, Function.identity()));
-
-        List<ReleasedVersionable> previousContents = listReleaseContents(previousRelease);
-        Map<String, ReleasedVersionable> previousByVersionHistory = previousContents.stream()
-                .collect(Collectors.toMap(ReleasedVersionable::getVersionHistory, Function.identity()));
-
-        for (ReleasedVersionable releasedVersionable : releaseContents) {
-            if (!releasedVersionable.equals(previousByVersionHistory.get(releasedVersionable.getVersionHistory()))) {
-                result.add(releasedVersionable);
-            }
-        }
-
-        for (ReleasedVersionable previousVersionable : previousContents) {
-            if (!releaseByVersionHistory.containsKey(previousVersionable.getVersionHistory())) {
-                previousVersionable.setVersionUuid(null);
-                result.add(previousVersionable);
-            }
+        Iterator<ReleasedVersionable> releaseContents =
+                getReleaseContentIndex(requireNonNull(ReleaseImpl.unwrap(release))).iterateByVersionHistory();
+        if (previousRelease == null) { // return everything
+            return releaseContents;
         }
-        return result;
+        Iterator<ReleasedVersionable> previousContents =
+                getReleaseContentIndex(requireNonNull(ReleaseImpl.unwrap(previousRelease))).iterateByVersionHistory();
+        return new ReleaseDifferenceIterator(releaseContents, previousContents);
     }
 
     @NotNull
@@ -512,18 +576,7 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
     @Override
     public ReleasedVersionable findReleasedVersionableByUuid(@NotNull Release rawRelease, @NotNull String versionHistoryUuid) {
         ReleaseImpl release = requireNonNull(ReleaseImpl.unwrap(rawRelease));
-        Resource releaseWorkspaceCopy = release.getWorkspaceCopyNode();
-
-        Query query = releaseWorkspaceCopy.getResourceResolver()
-                .adaptTo(QueryBuilder.class)
-                .createQuery();
-        query.path(releaseWorkspaceCopy.getPath()).type(TYPE_VERSIONREFERENCE).condition(
-                query.conditionBuilder().property(PROP_VERSIONHISTORY).eq().val(versionHistoryUuid)
-        );
-
-        Iterator<Resource> versionReferences = query.execute().iterator();
-        Resource versionReference = versionReferences.hasNext() ? versionReferences.next() : null;
-        return versionReference != null ? ReleasedVersionable.fromVersionReference(releaseWorkspaceCopy, versionReference) : null;
+        return getReleaseContentIndex(release).findByVersionHistory(versionHistoryUuid);
     }
 
     @Nullable
@@ -563,10 +616,13 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
     public Map<String, Result> updateRelease(@NotNull Release release, @NotNull List<ReleasedVersionable> releasedVersionableList) throws RepositoryException, PersistenceException, ReleaseClosedException, ReleaseChangeFailedException {
         ReleaseChangeEvent event = new ReleaseChangeEvent(release);
         Map<String, Result> result = new TreeMap<>();
-        for (ReleasedVersionable releasedVersionable : releasedVersionableList) {
-            Map<String, Result> partialResult = updateReleaseInternal(release, releasedVersionable, event);
+        BulkReleaseUpdate bulk = new BulkReleaseUpdate(requireNonNull(ReleaseImpl.unwrap(release)), event);
+        for (ReleasedVersionable releasedVersionable : bulk.inUpdateOrder(releasedVersionableList)) {
+            Map<String, Result> partialResult = updateReleaseInternal(release, releasedVersionable, event, bulk);
             result = Result.combine(result, partialResult);
+            bulk.itemDone();
         }
+        bulk.finish();
         applyPlugins(release, releasedVersionableList, event);
         publisher.publishActivation(event);
         return result;
@@ -613,7 +669,128 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
 
     @NotNull
     protected Map<String, Result> updateReleaseInternal(@NotNull Release rawRelease, @NotNull ReleasedVersionable releasedVersionable, ReleaseChangeEvent event) throws RepositoryException, PersistenceException, ReleaseClosedException {
-        return new ReleaseUpdater(rawRelease, releasedVersionable, event).callForUpdate();
+        return updateReleaseInternal(rawRelease, releasedVersionable, event, null);
+    }
+
+    /**
+     * @param bulk if given, the update is part of this bulk update: work which is common to several versionables is
+     *             deferred to {@link BulkReleaseUpdate#flush()}
+     */
+    @NotNull
+    protected Map<String, Result> updateReleaseInternal(@NotNull Release rawRelease, @NotNull ReleasedVersionable releasedVersionable, ReleaseChangeEvent event,
+                                                        @Nullable BulkReleaseUpdate bulk) throws RepositoryException, PersistenceException, ReleaseClosedException {
+        return new ReleaseUpdater(rawRelease, releasedVersionable, event, null, bulk).callForUpdate();
+    }
+
+    /**
+     * The state of an update of many versionables of a release at once. The versionables are processed in path order,
+     * and the work that is common to several of them is done only once: the attributes and sibling order of each
+     * parent are updated once, the check whether parents have to be marked deactivated, setting the release labels in
+     * version storage are collected and done in {@link #flush()}, the release change number is changed once in
+     * {@link #finish()}. Committing is left to the caller, so that the whole update is published in one event.
+     */
+    protected class BulkReleaseUpdate {
+
+        @NotNull
+        protected final ReleaseImpl release;
+        @NotNull
+        protected final ReleaseChangeEvent event;
+        @NotNull
+        protected final ResourceResolver resolver;
+        /** Index of the release contents, maintained along with the changes. */
+        @NotNull
+        protected final ReleaseContentIndex contentIndex;
+        /** Paths of the nodes of the workspace copy whose attributes and sibling order have been updated. */
+        protected final Set<String> updatedParents = new HashSet<>();
+        /** Paths of parents which have been made active. */
+        protected final Set<String> activatedParents = new HashSet<>();
+        /** Paths of parents that have to be checked whether they need to be deactivated, deepest first. */
+        protected final Set<String> parentsToCheck = new TreeSet<>(Comparator.reverseOrder());
+        /** The version uuids (or null for removal) to label, by version history uuid. */
+        protected final Map<String, String> labels = new LinkedHashMap<>();
+        protected int count;
+
+        public BulkReleaseUpdate(@NotNull ReleaseImpl release, @NotNull ReleaseChangeEvent event) {
+            this.release = release;
+            this.event = event;
+            this.resolver = release.getReleaseRoot().getResourceResolver();
+            this.contentIndex = getReleaseContentIndex(release).copy();
+        }
+
+        /**
+         * The versionables sorted by their path; if a versionable is given several times, only the last one counts.
+         */
+        @NotNull
+        public List<ReleasedVersionable> inUpdateOrder(@NotNull List<ReleasedVersionable> releasedVersionables) {
+            Map<String, ReleasedVersionable> byVersionHistory = new LinkedHashMap<>();
+            for (ReleasedVersionable releasedVersionable : releasedVersionables) {
+                byVersionHistory.remove(releasedVersionable.getVersionHistory());
+                byVersionHistory.put(releasedVersionable.getVersionHistory(), releasedVersionable);
+            }
+            List<ReleasedVersionable> result = new ArrayList<>(byVersionHistory.values());
+            result.sort(Comparator.comparing(ReleasedVersionable::getRelativePath,
+                    Comparator.nullsFirst(Comparator.naturalOrder())));
+            return result;
+        }
+
+        /** Called after each versionable. */
+        public void itemDone() {
+            count++;
+        }
+
+        /**
+         * Completes the update; committing is left to the caller. The maintained index is shared for the new change
+         * number, so that it needn't be rebuilt after the commit.
+         */
+        public void finish() throws RepositoryException {
+            flush();
+            if (count > 0) {
+                contentIndex.setChangeNumber(bumpReleaseChangeNumber(release));
+                release.updateLastModified();
+                putReleaseContentIndex(release, contentIndex);
+            }
+        }
+
+        /** Does the work collected for the updates since the last flush. */
+        public void flush() throws RepositoryException {
+            for (String path : parentsToCheck) {
+                Resource parent = resolver.getResource(path);
+                if (parent != null) {
+                    maybeSetDeletedFlag(release, event, parent);
+                }
+            }
+            parentsToCheck.clear();
+            activatedParents.clear();
+            updateReleaseLabels();
+        }
+
+        /** Sets the collected labels - by identifier, without iterating through the version histories. */
+        protected void updateReleaseLabels() throws RepositoryException {
+            Session session = requireNonNull(resolver.adaptTo(Session.class));
+            String label = release.getReleaseLabel();
+            for (Map.Entry<String, String> entry : labels.entrySet()) {
+                String versionUuid = entry.getValue();
+                if (StringUtils.isBlank(versionUuid)) { // might still be in the release elsewhere
+                    ReleasedVersionable stillReleased = contentIndex.findByVersionHistory(entry.getKey());
+                    versionUuid = stillReleased != null ? stillReleased.getVersionUuid() : null;
+                }
+                if (StringUtils.isBlank(versionUuid)) {
+                    removeReleaseLabel(session, entry.getKey(), label);
+                    continue;
+                }
+                VersionHistory versionHistory;
+                try {
+                    versionHistory = (VersionHistory) session.getNodeByIdentifier(entry.getKey());
+                } catch (ItemNotFoundException e) {
+                    LOG.debug("No version history anymore for {} : {}", release, entry.getKey());
+                    continue;
+                }
+                Node version = session.getNodeByIdentifier(versionUuid);
+                versionHistory.addVersionLabel(version.getName(), label, true);
+                LOG.debug("Setting label {} on version {}", label, versionUuid);
+            }
+            labels.clear();
+        }
     }
 
     /**
@@ -639,11 +816,35 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
         protected final String newPath;
         protected ReleasedVersionable previousRV;
         protected final Map<String, Result> result = new HashMap<>();
+        /** If set, this is used to find the version reference and maintained along with the changes. */
+        @Nullable
+        protected final ReleaseContentIndex contentIndex;
+        /** If set, this is part of a bulk update and leaves some of the work to it. */
+        @Nullable
+        protected final BulkReleaseUpdate bulk;
 
         public ReleaseUpdater(@NotNull Release rawRelease, @NotNull ReleasedVersionable releasedVersionable,
                               @NotNull ReleaseChangeEvent event) throws ReleaseClosedException,
                 RepositoryException {
+            this(rawRelease, releasedVersionable, event, null, null);
+        }
+
+        public ReleaseUpdater(@NotNull Release release, @NotNull ReleasedVersionable releasedVersionable,
+                              @NotNull ReleaseChangeEvent event,
+                              @Nullable Resource copiedVersionReferenceResource) throws ReleaseClosedException,
+                RepositoryException {
+            this(release, releasedVersionable, event, copiedVersionReferenceResource, null);
+        }
+
+        public ReleaseUpdater(@NotNull Release rawRelease, @NotNull ReleasedVersionable releasedVersionable,
+                              @NotNull ReleaseChangeEvent event,
+                              @Nullable Resource copiedVersionReferenceResource,
+                              @Nullable BulkReleaseUpdate bulk) throws ReleaseClosedException,
+                RepositoryException {
             this.releasedVersionable = releasedVersionable;
+            this.copiedVersionReferenceResource = copiedVersionReferenceResource;
+            this.bulk = bulk;
+            this.contentIndex = bulk != null ? bulk.contentIndex : null;
             delete = releasedVersionable.getVersionUuid() == null;
             this.event = event;
 
@@ -659,21 +860,18 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
             determineCurrentUseInRelease();
         }
 
-        public ReleaseUpdater(@NotNull Release release, @NotNull ReleasedVersionable releasedVersionable,
-                              @NotNull ReleaseChangeEvent event,
-                              @Nullable Resource copiedVersionReferenceResource) throws ReleaseClosedException,
-                RepositoryException {
-            this(release, releasedVersionable, event);
-            this.copiedVersionReferenceResource = copiedVersionReferenceResource;
-        }
-
         /**
          * Finds out whether the releasedVersionable is already in the release-> versionReference, previousRV .
          */
         protected void determineCurrentUseInRelease() {
             versionReference = releaseWorkspaceCopy.getResourceResolver().getResource(newPath);
             previousRV = versionReference != null ? ReleasedVersionable.fromVersionReference(releaseWorkspaceCopy, versionReference) : null;
-            if (versionReference == null || !StringUtils.equals(previousRV.getVersionHistory(), releasedVersionable.getVersionHistory())) {
+            if ((versionReference == null || !StringUtils.equals(previousRV.getVersionHistory(), releasedVersionable.getVersionHistory()))
+                    && contentIndex != null) { // check whether it was moved
+                String relativePath = contentIndex.findPathByVersionableUuid(releasedVersionable.getVersionableUuid());
+                versionReference = relativePath != null ? releaseWorkspaceCopy.getChild(relativePath) : null;
+                previousRV = versionReference != null ? ReleasedVersionable.fromVersionReference(releaseWorkspaceCopy, versionReference) : null;
+            } else if (versionReference == null || !StringUtils.equals(previousRV.getVersionHistory(), releasedVersionable.getVersionHistory())) {
                 // check whether it was moved. Caution: queries work only for comitted content
                 Query query = releaseWorkspaceCopy.getResourceResolver()
                         .adaptTo(QueryBuilder.class)
@@ -696,9 +894,14 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
                 adjustParentsDeletedFlags();
             }
 
-            bumpReleaseChangeNumber(release);
-            release.updateLastModified();
-            updateReleaseLabel();
+            if (bulk != null) { // change number, modification date and label are set by the bulk update
+                updateContentIndex(null);
+                bulk.labels.put(releasedVersionable.getVersionHistory(), releasedVersionable.getVersionUuid());
+            } else {
+                updateContentIndex(bumpReleaseChangeNumber(release));
+                release.updateLastModified();
+                updateReleaseLabel();
+            }
             updateEvent();
 
             updateParentsAndCreateResult();
@@ -713,7 +916,7 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
                 adjustParentsDeletedFlags();
             }
 
-            bumpReleaseChangeNumber(release);
+            updateContentIndex(bumpReleaseChangeNumber(release));
             release.updateLastModified();
             updateReleaseLabel();
             updateEvent();
@@ -723,6 +926,33 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
         }
 
 
+        /** Records the changed version reference in the {@link #contentIndex}, if there is one. */
+        protected void updateContentIndex(@Nullable String newChangeNumber) {
+            if (contentIndex != null) {
+                if (previousRV != null) {
+                    noteRemovedFromIndex(contentIndex.remove(previousRV.getRelativePath()));
+                }
+                if (!delete) {
+                    noteRemovedFromIndex(contentIndex.put(
+                            ReleasedVersionable.fromVersionReference(releaseWorkspaceCopy, requireNonNull(versionReference))));
+                }
+                if (newChangeNumber != null) {
+                    contentIndex.setChangeNumber(newChangeNumber);
+                }
+            }
+        }
+
+        /**
+         * In a bulk update, a version reference of a different versionable that was replaced needs its release label
+         * checked - that's the only way labels can become obsolete in an update.
+         */
+        protected void noteRemovedFromIndex(@Nullable ReleasedVersionable removed) {
+            if (bulk != null && removed != null && removed.getVersionHistory() != null
+                    && !removed.getVersionHistory().equals(releasedVersionable.getVersionHistory())) {
+                bulk.labels.putIfAbsent(removed.getVersionHistory(), null);
+            }
+        }
+
         /**
          * We create, move or delete the versionReference, as appropriate for our operation.
          */
@@ -780,6 +1010,10 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
                 LOG.info("Deleting obsolete {}", todelete.getPath());
                 event.addMoveOrUpdate(todelete.getPath(), null);
                 resolver.delete(todelete);
+                if (bulk != null) { // might be created again later
+                    bulk.updatedParents.remove(todelete.getPath());
+                    bulk.activatedParents.remove(todelete.getPath());
+                }
             }
             if (inRelease) { // parent is a node that has children
                 maybeSetDeletedFlag(parent);
@@ -791,7 +1025,7 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
          * otherwise the move will fail. A warning is logged, but we assume the user knows what he is doing; it can
          * will show up in the version differences and can be reverted, anyway.
          */
-        protected void checkAndRemoveOldReferenceForMove(String newPath) throws PersistenceException {
+        protected void checkAndRemoveOldReferenceForMove(String newPath) throws PersistenceException, RepositoryException {
             Resource resourceAtPath = resolver.getResource(newPath);
             if (resourceAtPath != null) {
                 if (!ResourceUtil.isPrimaryType(resourceAtPath, TYPE_VERSIONREFERENCE)) {
@@ -802,6 +1036,10 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
                 ReleasedVersionable releasedVersionable = oldVersionReference.getReleasedVersionable();
                 resolver.delete(resourceAtPath);
                 LOG.warn("Removing VersionReference that is going to be overwritten: {} : {}", newPath, releasedVersionable);
+                if (bulk == null && releasedVersionable.getVersionHistory() != null) { // a bulk update checks the label later
+                    removeReleaseLabel(requireNonNull(resolver.adaptTo(Session.class)),
+                            releasedVersionable.getVersionHistory(), release.getReleaseLabel());
+                }
             }
         }
 
@@ -819,6 +1057,9 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
         protected void resetDeletedFlag(Resource resource) {
             if (resource != null && SlingResourceUtil.isSameOrDescendant(release.getWorkspaceCopyNode().getPath(),
                     resource.getPath())) {
+                if (bulk != null && !bulk.activatedParents.add(resource.getPath())) {
+                    return; // this and its parents were already done
+                }
                 if (resource.getValueMap().get(PROP_DEACTIVATED, false)) {
                     resource.adaptTo(ModifiableValueMap.class).remove(PROP_DEACTIVATED);
                     event.addMoveOrUpdate(null, resource.getPath());
@@ -829,34 +1070,16 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
 
         /**
          * Check that all parents have either an active versionreference below or are marked as deactivated.
+         * In a bulk update that's done once per parent at the end.
          */
         protected void maybeSetDeletedFlag(Resource resource) {
-            if (resource != null && SlingResourceUtil.isSameOrDescendant(release.getWorkspaceCopyNode().getPath(),
-                    resource.getPath())) {
-                if (resource.getValueMap().get(PROP_DEACTIVATED, false)) {
-                    return;
-                }
-                if (!hasActiveVersionReferenceDescendant(resource)) {
-                    resource.adaptTo(ModifiableValueMap.class).put(PROP_DEACTIVATED, true);
-                    event.addMoveOrUpdate(resource.getPath(), null);
-                    maybeSetDeletedFlag(resource.getParent());
-                }
-            }
-        }
-
-        protected boolean hasActiveVersionReferenceDescendant(Resource parent) {
-            if (parent.getValueMap().get(PROP_DEACTIVATED, false)) {
-                return false;
-            }
-            if (VersionReferenceImpl.isVersionReference(parent)) {
-                return true;
-            }
-            for (Resource child : parent.getChildren()) {
-                if (hasActiveVersionReferenceDescendant(child)) {
-                    return true;
+            if (bulk != null) {
+                if (resource != null) {
+                    bulk.parentsToCheck.add(resource.getPath());
                 }
+            } else {
+                DefaultStagingReleaseManager.this.maybeSetDeletedFlag(release, event, resource);
             }
-            return false;
         }
 
         protected void createMissingParents() throws RepositoryException, PersistenceException {
@@ -925,7 +1148,9 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
             Iterator<String> levelIterator = IteratorUtils.arrayIterator(levels);
 
             while (template.isValid() && inRelease.isValid() && !inRelease.isOfType(TYPE_VERSIONREFERENCE)) {
-                boolean attributesChanged = sync.updateAttributes(template, inRelease, StagingConstants.REAL_PROPNAMES_TO_FROZEN_NAMES);
+                boolean alreadyUpdated = bulk != null && !bulk.updatedParents.add(inRelease.getPath());
+                boolean attributesChanged = !alreadyUpdated &&
+                        sync.updateAttributes(template, inRelease, StagingConstants.REAL_PROPNAMES_TO_FROZEN_NAMES);
                 if (attributesChanged) {
                     event.addMoveOrUpdate(template.getPath(), template.getPath());
                 }
@@ -935,7 +1160,8 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
                 String level = levelIterator.next();
                 template = ResourceHandle.use(template.getChild(level));
                 inRelease = ResourceHandle.use(inRelease.getChild(level));
-                if (template.isValid() && inRelease.isValid()) {
+                if (template.isValid() && inRelease.isValid()
+                        && (bulk == null || !bulk.updatedParents.contains(inRelease.getPath()))) {
                     // we do that for all nodes except the root but including the version reference itself:
                     updateSiblingOrderAndSaveResult(template, inRelease);
                 }
@@ -1018,6 +1244,39 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
     }
 
 
+    /**
+     * Check that the resource and its parents have either an active versionreference below or are marked as
+     * deactivated.
+     */
+    protected void maybeSetDeletedFlag(@NotNull ReleaseImpl release, @NotNull ReleaseChangeEvent event, @Nullable Resource resource) {
+        if (resource != null && SlingResourceUtil.isSameOrDescendant(release.getWorkspaceCopyNode().getPath(),
+                resource.getPath())) {
+            if (resource.getValueMap().get(PROP_DEACTIVATED, false)) {
+                return;
+            }
+            if (!hasActiveVersionReferenceDescendant(resource)) {
+                resource.adaptTo(ModifiableValueMap.class).put(PROP_DEACTIVATED, true);
+                event.addMoveOrUpdate(resource.getPath(), null);
+                maybeSetDeletedFlag(release, event, resource.getParent());
+            }
+        }
+    }
+
+    protected boolean hasActiveVersionReferenceDescendant(Resource parent) {
+        if (parent.getValueMap().get(PROP_DEACTIVATED, false)) {
+            return false;
+        }
+        if (VersionReferenceImpl.isVersionReference(parent)) {
+            return true;
+        }
+        for (Resource child : parent.getChildren()) {
+            if (hasActiveVersionReferenceDescendant(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     protected void applyPlugins(Release rawRelease, List<ReleasedVersionable> releasedVersionableList, ReleaseChangeEvent event) throws RepositoryException {
         ReleaseImpl release = requireNonNull(ReleaseImpl.unwrap(rawRelease));
         ArrayList<StagingReleaseManagerPlugin> pluginscopy = new ArrayList<>(plugins); // avoid concurrent modifiation problems
@@ -1076,7 +1335,130 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
     @NotNull
     public ResourceResolver getResolverForRelease(@NotNull Release release, @Nullable ReleaseMapper releaseMapper, boolean closeResolverOnClose) {
         return new StagingResourceResolver(release, ReleaseImpl.unwrap(release).getReleaseRoot().getResourceResolver(),
-                releaseMapper != null ? releaseMapper : ReleaseMapper.ALLPERMISSIVE, configuration, closeResolverOnClose);
+                releaseMapper != null ? releaseMapper : ReleaseMapper.ALLPERMISSIVE, configuration, this, closeResolverOnClose);
+    }
+
+    /**
+     * Returns the shared index of the versionables of a release for the given change number; it's built on the first
+     * request for a change number, reusing the version lookups of the index of the previous change number. The indexes
+     * are shared between the resolvers of the same user only, since they contain only what the user can read.
+     * Concurrent requests for the same index wait for the first one to build it.
+     *
+     * @return the index or null if the index is disabled by the configuration or couldn't be built
+     */
+    @Nullable
+    protected ReleasePathIndex getReleasePathIndex(@NotNull ReleaseImpl release, @NotNull String changeNumber) {
+        LruCache<String, ReleasePathIndexBuild> indexes = releasePathIndexes;
+        if (indexes == null) {
+            indexes = new LruCache<>(configuration.release_index_cache_size());
+            releasePathIndexes = indexes;
+        }
+        if (indexes.getMaxSize() <= 0) {
+            return null;
+        }
+        String key = release.getUuid() + '|' + release.getReleaseRoot().getResourceResolver().getUserID();
+        ReleasePathIndexBuild build;
+        ReleasePathIndexBuild previous = null;
+        boolean buildHere = false;
+        synchronized (indexes) {
+            build = indexes.get(key);
+            if (build == null || !build.changeNumber.equals(changeNumber)) {
+                previous = build;
+                build = new ReleasePathIndexBuild(changeNumber);
+                indexes.put(key, build);
+                buildHere = true;
+            }
+        }
+        if (buildHere) {
+            try {
+                long start = System.currentTimeMillis();
+                ReleasePathIndex index = new ReleasePathIndex(release, changeNumber,
+                        previous != null ? previous.getIndexIfBuilt() : null);
+                build.index.complete(index);
+                LOG.debug("Built {} in {}ms", index, System.currentTimeMillis() - start);
+            } catch (RuntimeException e) {
+                build.index.completeExceptionally(e);
+                synchronized (indexes) {
+                    if (indexes.get(key) == build) {
+                        indexes.remove(key);
+                    }
+                }
+                throw e;
+            }
+        }
+        try {
+            return build.index.join();
+        } catch (CompletionException | CancellationException e) {
+            LOG.warn("Index for {} could not be built: {}", key, e.toString());
+            return null;
+        }
+    }
+
+    /** A {@link ReleasePathIndex} for a change number, possibly still being built by another thread. */
+    protected static class ReleasePathIndexBuild {
+
+        protected final String changeNumber;
+
+        protected final CompletableFuture<ReleasePathIndex> index = new CompletableFuture<>();
+
+        protected ReleasePathIndexBuild(@NotNull String changeNumber) {
+            this.changeNumber = changeNumber;
+        }
+
+        /** The index, if it was successfully built already. */
+        @Nullable
+        protected ReleasePathIndex getIndexIfBuilt() {
+            return index.isDone() && !index.isCompletedExceptionally() ? index.join() : null;
+        }
+    }
+
+    /**
+     * Returns the index of the current contents of the release. Indexes of committed states of releases are shared
+     * between the resolvers of the same user (since they contain only what the user can read), validated by the
+     * change number; if the resolver of the release has pending changes the index is built just for
+     * this call, since the change number doesn't necessarily reflect these. The returned index must not be modified -
+     * use {@link ReleaseContentIndex#copy()} for that.
+     */
+    @NotNull
+    protected ReleaseContentIndex getReleaseContentIndex(@NotNull ReleaseImpl release) {
+        String changeNumber = release.getChangeNumber();
+        if (release.getReleaseRoot().getResourceResolver().hasChanges()) {
+            return new ReleaseContentIndex(release, changeNumber);
+        }
+        LruCache<String, ReleaseContentIndex> indexes = getReleaseContentIndexes();
+        String key = releaseContentIndexKey(release);
+        ReleaseContentIndex index = indexes.get(key);
+        if (index == null || !index.getChangeNumber().equals(changeNumber)) {
+            long start = System.currentTimeMillis();
+            index = new ReleaseContentIndex(release, changeNumber);
+            indexes.put(key, index);
+            LOG.debug("Built {} in {}ms", index, System.currentTimeMillis() - start);
+        }
+        return index;
+    }
+
+    /**
+     * Shares an index that was maintained along with an update of the release. It is keyed by the new change number,
+     * so it's used only after the update is committed - on a revert the change number of the release doesn't match
+     * and the index is rebuilt. The index must not be modified afterwards.
+     */
+    protected void putReleaseContentIndex(@NotNull ReleaseImpl release, @NotNull ReleaseContentIndex index) {
+        getReleaseContentIndexes().put(releaseContentIndexKey(release), index);
+    }
+
+    @NotNull
+    protected LruCache<String, ReleaseContentIndex> getReleaseContentIndexes() {
+        LruCache<String, ReleaseContentIndex> indexes = releaseContentIndexes;
+        if (indexes == null) {
+            indexes = new LruCache<>(configuration.release_content_cache_size());
+            releaseContentIndexes = indexes;
+        }
+        return indexes;
+    }
+
+    @NotNull
+    protected String releaseContentIndexKey(@NotNull ReleaseImpl release) {
+        return release.getUuid() + '|' + release.getReleaseRoot().getResourceResolver().getUserID();
     }
 
     @Override
@@ -1111,8 +1493,39 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
                 setPreviousRelease(otherRelease, release.getPreviousRelease());
             }
         }
-        release.getReleaseRoot().getResourceResolver().delete(release.getReleaseNode());
-        cleanupLabels(release.getReleaseRoot());
+        // remove the label from the versions in the release instead of searching the whole version storage
+        List<String> versionHistories = new ArrayList<>();
+        for (Iterator<ReleasedVersionable> it = getReleaseContentIndex(release).iterateByVersionHistory(); it.hasNext(); ) {
+            versionHistories.add(it.next().getVersionHistory());
+        }
+        String label = release.getReleaseLabel();
+        ResourceResolver resolver = release.getReleaseRoot().getResourceResolver();
+        resolver.delete(release.getReleaseNode());
+        // label changes are persisted immediately, so they are done only when the release is really gone -
+        // labels that are left over if that fails are found by cleanupLabels.
+        resolver.commit();
+        Session session = requireNonNull(resolver.adaptTo(Session.class));
+        for (String versionHistory : versionHistories) {
+            try {
+                removeReleaseLabel(session, versionHistory, label);
+            } catch (RepositoryException e) {
+                LOG.warn("Could not remove label {} from {} : {}", label, versionHistory, e.toString());
+            }
+        }
+    }
+
+    /** Removes the label from the version history, if it's there. */
+    protected void removeReleaseLabel(@NotNull Session session, @NotNull String versionHistoryUuid, @NotNull String label)
+            throws RepositoryException {
+        try {
+            VersionHistory versionHistory = (VersionHistory) session.getNodeByIdentifier(versionHistoryUuid);
+            if (versionHistory.hasVersionLabel(label)) {
+                versionHistory.removeVersionLabel(label);
+                LOG.debug("Removed label {} from {}", label, versionHistoryUuid);
+            }
+        } catch (ItemNotFoundException e) {
+            LOG.debug("No version history anymore: {}", versionHistoryUuid);
+        }
     }
 
     @Nullable
@@ -1130,6 +1543,10 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
         if (StringUtils.isBlank(uuid)) {
             return null;
         }
+        ReleaseImpl cachedRelease = findCachedRelease(root, uuid);
+        if (cachedRelease != null) {
+            return cachedRelease;
+        }
         for (Resource releaseNode : releasesNode.getChildren()) {
             if (uuid.equals(releaseNode.getValueMap().get(PROP_UUID, String.class))) {
                 return new ReleaseImpl(root, releaseNode);
@@ -1186,7 +1603,14 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
         query.path("/jcr:system/jcr:versionStorage").type("nt:versionHistory").condition(
                 query.conditionBuilder().property("default").like().val(root.getPath() + "/%")
         );
+        int batchSize = configuration.label_cleanup_batch_size();
+        int checked = 0;
         for (Resource versionHistory : query.execute()) {
+            if (batchSize > 0 && ++checked % batchSize == 0) { // label changes are persisted immediately
+                LOG.info("cleanupLabels checked {} version histories of {}, removed {} labels so far",
+                        checked, root.getPath(), count);
+                pauseLabelCleanup();
+            }
             Resource labelResource = versionHistory.getChild(ResourceUtil.JCR_VERSIONLABELS);
             ValueMap valueMap = labelResource.getValueMap();
             for (String label : valueMap.keySet()) {
@@ -1200,10 +1624,23 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
                 }
             }
         }
-        LOG.info("cleanupLabels removed {} obsolete labels in {}s", 0.001 * (System.currentTimeMillis() - start));
+        LOG.info("cleanupLabels removed {} obsolete labels in {}s", count, 0.001 * (System.currentTimeMillis() - start));
         return count;
     }
 
+    /** Throttles {@link #cleanupLabels(Resource)} between the batches to limit the load on the repository. */
+    protected void pauseLabelCleanup() throws RepositoryException {
+        long pause = configuration.label_cleanup_pause_ms();
+        if (pause > 0) {
+            try {
+                Thread.sleep(pause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RepositoryException("Interrupted label cleanup", e);
+            }
+        }
+    }
+
     @Override
     public void closeRelease(@NotNull Release rawRelease) throws RepositoryException {
         ReleaseImpl release = requireNonNull(ReleaseImpl.unwrap(rawRelease));
@@ -1669,6 +2106,36 @@ public class DefaultStagingReleaseManager implements StagingReleaseManager {
         )
         String[] removed_paths() default {};
 
+        @AttributeDefinition(
+                name = "Resolver Cache Size",
+                description = "The maximum number of resolved paths and version references each release resolver remembers; 0 disables the cache"
+        )
+        int resolver_cache_size() default 1000;
+
+        @AttributeDefinition(
+                name = "Release Index Cache Size",
+                description = "The number of indexes of the versionables kept to speed up the resolution of released content - one per release and user, since each contains only what the user can read; 0 disables the index"
+        )
+        int release_index_cache_size() default 10;
+
+        @AttributeDefinition(
+                name = "Release Content Cache Size",
+                description = "The number of indexes of the released versionables kept to speed up listing and updating the releases - one per release and user, since each contains only what the user can read; 0 disables keeping them"
+        )
+        int release_content_cache_size() default 10;
+
+        @AttributeDefinition(
+                name = "Label Cleanup Batch Size",
+                description = "The full scan of the version storage for obsolete release labels (a maintenance operation) reports its progress and pauses after each batch of this many version histories; 0 for no batches"
+        )
+        int label_cleanup_batch_size() default 1000;
+
+        @AttributeDefinition(
+                name = "Label Cleanup Pause",
+                description = "The pause in milliseconds between two batches of the label cleanup"
+        )
+        long label_cleanup_pause_ms() default 100;
+
     }
 
 }
@@ -0,0 +1,77 @@
+package com.composum.sling.platform.staging.impl;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A trie of relative paths, split into path segments, which checks in one pass over a path whether it is one of
+ * the paths or a descendant of one of them - used for the configured overlayed nodes and removed paths of
+ * releases. Immutable after construction and thus shared between the resolvers.
+ */
+@Immutable
+public class PathSegmentTrie {
+
+    protected final Map<String, PathSegmentTrie> children = new HashMap<>();
+
+    /** true if this node is the end of one of the paths */
+    protected boolean terminal;
+
+    protected PathSegmentTrie() {
+    }
+
+    /**
+     * @param relativePaths the paths relative to the path the checks are done for; blank paths are ignored
+     */
+    public PathSegmentTrie(@Nullable String[] relativePaths) {
+        if (relativePaths != null) {
+            for (String relativePath : relativePaths) {
+                PathSegmentTrie node = this;
+                for (String segment : StringUtils.split(StringUtils.defaultString(relativePath), '/')) {
+                    node = node.children.computeIfAbsent(segment, (s) -> new PathSegmentTrie());
+                }
+                if (node != this) {
+                    node.terminal = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether the path is the same or a descendant of one of the paths, relative to a base path.
+     *
+     * @param basePath the path the paths of the trie are relative to
+     * @param path     a normalized absolute path
+     */
+    public boolean isSameOrDescendant(@NotNull String basePath, @Nullable String path) {
+        if (children.isEmpty() || path == null || path.length() <= basePath.length() + 1
+                || !path.startsWith(basePath) || path.charAt(basePath.length()) != '/') {
+            return false;
+        }
+        PathSegmentTrie node = this;
+        int start = basePath.length() + 1;
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            node = node.children.get(path.substring(start, end));
+            if (node == null) {
+                return false;
+            }
+            if (node.terminal) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return children.isEmpty();
+    }
+}
@@ -72,7 +72,7 @@ public class PlatformStagingServlet extends AbstractServiceServlet {
     public enum Operation {
         stageRelease, abortReplication,
         replicationState, aggregatedReplicationState,
-        compareContent
+        compareContent, cleanupLabels
     }
 
     @Override
@@ -100,6 +100,8 @@ public class PlatformStagingServlet extends AbstractServiceServlet {
                 new StageReleaseOperation());
         operations.setOperation(ServletOperationSet.Method.POST, Extension.json, Operation.abortReplication,
                 new AbortReplicationOperation());
+        operations.setOperation(ServletOperationSet.Method.POST, Extension.json, Operation.cleanupLabels,
+                new CleanupLabelsOperation());
     }
 
     public static String getReleaseKey(@NotNull final SlingHttpServletRequest request,
@@ -283,4 +285,38 @@ public class PlatformStagingServlet extends AbstractServiceServlet {
             }
         }
     }
+
+    /**
+     * Interfaces {@link StagingReleaseManager#cleanupLabels(Resource)} - the maintenance scan of the version storage
+     * for obsolete release labels of the release root of the resource.
+     */
+    protected class CleanupLabelsOperation implements ServletOperation {
+
+        /**
+         * Name of result parameter.
+         */
+        public static final String RESULT_CLEANUPLABELS = "cleanupLabels";
+
+        @Override
+        public void doIt(@NotNull SlingHttpServletRequest request,
+                         @NotNull SlingHttpServletResponse response,
+                         @Nullable ResourceHandle resource)
+                throws IOException {
+            Status status = new Status(request, response, LOG);
+            try {
+                if (resource != null && resource.isValid()) {
+                    int removed = releaseManager.cleanupLabels(resource);
+                    request.getResourceResolver().commit();
+                    status.data(RESULT_CLEANUPLABELS).put("removed", removed);
+                } else {
+                    status.error("Resource not found");
+                    status.setStatus(SlingHttpServletResponse.SC_NOT_FOUND);
+                }
+            } catch (Exception e) {
+                status.error("Internal error", e);
+            } finally {
+                status.sendJson();
+            }
+        }
+    }
 }
@@ -7,18 +7,42 @@ import com.composum.sling.platform.staging.*;
 import com.composum.sling.platform.staging.replication.ReplicationConfig;
 import com.composum.sling.platform.staging.replication.ReplicationException;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.commons.threads.ThreadPool;
 import org.apache.sling.commons.threads.ThreadPoolManager;
 import org.osgi.framework.Constants;
 import org.osgi.service.component.annotations.*;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Component(
@@ -27,6 +51,7 @@ import java.util.stream.Collectors;
                 Constants.SERVICE_DESCRIPTION + "=Composum Platform Replication Service Publisher"
         }
 )
+@Designate(ocd = ReleaseChangeEventPublisherImpl.Configuration.class)
 public class ReleaseChangeEventPublisherImpl implements ReleaseChangeEventPublisher {
 
     private static final Logger LOG = LoggerFactory.getLogger(ReleaseChangeEventPublisherImpl.class);
@@ -36,24 +61,46 @@ public class ReleaseChangeEventPublisherImpl implements ReleaseChangeEventPublis
      */
     public static final String THREADPOOL_NAME = "RCEventPub";
 
-    /**
-     * A time we wait before executing changes to try to make sure the transaction was already comitted.
-     * If this is too low, this can lead to consistency problems!
-     */
-    protected static final long WAIT_FOR_COMMIT_TIME_MS = 5000;
-
     @Reference
     protected ThreadPoolManager threadPoolManager;
 
+    @Reference
+    protected ResourceResolverFactory resolverFactory;
+
     protected final List<ReleaseChangeEventListener> releaseChangeEventListeners = Collections.synchronizedList(new ArrayList<>());
 
     protected volatile ThreadPool threadPool;
 
     /**
-     * Object to lock over when changing {@link #runningProcesses} or {@link #queuedProcesses}.
+     * Runs the deliveries to the listeners if {@link Configuration#asynchronous_listeners()}, separately from the
+     * processes in the {@link #threadPool}.
+     */
+    protected volatile ThreadPool listenerThreadPool;
+
+    protected volatile Configuration configuration;
+
+    /**
+     * Only keeps the time for the debouncing of the processes - they are run in the {@link #threadPool}.
+     */
+    protected volatile ScheduledExecutorService scheduler;
+
+    /**
+     * Observes the commits of the release change numbers if {@link Configuration#commit_trigger()}.
+     */
+    protected volatile CommitObserver commitObserver;
+
+    /**
+     * Object to lock over when changing {@link #runningProcesses}, {@link #queuedProcesses} or
+     * {@link #pendingProcesses}.
      */
     protected final Object lock = new Object();
 
+    /**
+     * The processes which received events and wait for the quiet period to start.
+     * Synchronize {@link #lock} when accessing this!
+     */
+    protected final Map<ReleaseChangeProcess, PendingProcess> pendingProcesses = new WeakHashMap<>();
+
     /**
      * Keeps the results to keep track which processes are currently running.
      * Synchronize {@link #lock} when accessing this!
@@ -66,6 +113,23 @@ public class ReleaseChangeEventPublisherImpl implements ReleaseChangeEventPublis
      */
     protected final Map<ReleaseChangeProcess, Boolean> queuedProcesses = new WeakHashMap<>();
 
+    /**
+     * The processes whose state was requested, with the time of the last request - the synchronization state of
+     * these is refreshed in the background. Synchronize {@link #lock} when accessing this!
+     */
+    protected final Map<ReleaseChangeProcess, Long> polledProcesses = new WeakHashMap<>();
+
+    /**
+     * Prevents overlapping background refreshs of the synchronization state.
+     */
+    protected final AtomicBoolean refreshRunning = new AtomicBoolean();
+
+    /**
+     * The queues for the listeners if {@link Configuration#asynchronous_listeners()}; created when needed.
+     * Synchronize over the map when accessing this!
+     */
+    protected final Map<ReleaseChangeEventListener, ListenerDispatcher> listenerDispatchers = new IdentityHashMap<>();
+
     @Reference(
             service = ReleaseChangeEventListener.class,
             policy = ReferencePolicy.DYNAMIC,
@@ -82,15 +146,66 @@ public class ReleaseChangeEventPublisherImpl implements ReleaseChangeEventPublis
         LOG.info("Removing listener {}@{}", listener.getClass().getName(), System.identityHashCode(listener));
         //noinspection ObjectEquality : equality for services not defined
         releaseChangeEventListeners.removeIf(releaseChangeEventListener -> releaseChangeEventListener == listener);
+        ListenerDispatcher dispatcher;
+        synchronized (listenerDispatchers) {
+            dispatcher = listenerDispatchers.remove(listener);
+        }
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
     }
 
     @Override
     public void publishActivation(ReleaseChangeEvent event) throws ReleaseChangeFailedException {
+        CompletableFuture<Void> result = publishActivationWithCompletion(event);
+        // asynchronous failures, including events dropped since a queue was full, don't roll back the activation
+        if (!configuration.asynchronous_listeners() && result.isCompletedExceptionally()) {
+            try {
+                result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof ReleaseChangeFailedException) {
+                    throw (ReleaseChangeFailedException) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Publishes the event to the listeners and triggers the processes. If {@link Configuration#asynchronous_listeners()}
+     * the listeners are called in the background, each with its own queue, so that slow listeners don't delay the
+     * activation or the other listeners; otherwise they are called synchronously and a failure prevents triggering
+     * the processes.
+     */
+    @NotNull
+    @Override
+    public CompletableFuture<Void> publishActivationWithCompletion(@Nullable ReleaseChangeEvent event) {
         if (event == null || event.isEmpty()) {
-            return;
+            return CompletableFuture.completedFuture(null);
         }
         event.finish();
         LOG.info("publishActivation {}", event);
+        CompletableFuture<Void> result;
+        if (configuration.asynchronous_listeners()) {
+            result = dispatchToListeners(event);
+        } else {
+            try {
+                notifyListeners(event);
+                result = CompletableFuture.completedFuture(null);
+            } catch (ReleaseChangeFailedException e) {
+                result = new CompletableFuture<>();
+                result.completeExceptionally(e);
+                return result;
+            }
+        }
+        triggerProcesses(event);
+        return result;
+    }
+
+    /**
+     * Calls the listeners synchronously.
+     */
+    protected void notifyListeners(@NotNull ReleaseChangeEvent event) throws ReleaseChangeFailedException {
         ReleaseChangeFailedException exception = null;
         List<ReleaseChangeEventListener> listeners = new ArrayList<>(this.releaseChangeEventListeners);
         // copy listeners to avoid concurrent modification problems
@@ -119,7 +234,45 @@ public class ReleaseChangeEventPublisherImpl implements ReleaseChangeEventPublis
             throw exception;
         }
         // we trigger the processes only afterwards - throwing an exception here rolls back the changes
+    }
+
+    /**
+     * Puts the event into the queues of all listeners.
+     *
+     * @return a future that completes when all listeners received the event
+     */
+    @NotNull
+    protected CompletableFuture<Void> dispatchToListeners(@NotNull ReleaseChangeEvent event) {
+        List<ReleaseChangeEventListener> listeners = new ArrayList<>(this.releaseChangeEventListeners);
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        for (ReleaseChangeEventListener releaseChangeEventListener : listeners) {
+            ListenerDispatcher dispatcher;
+            synchronized (listenerDispatchers) {
+                dispatcher = listenerDispatchers.computeIfAbsent(releaseChangeEventListener,
+                        (listener) -> new ListenerDispatcher(listener, configuration.listener_queue_size(),
+                                listenerThreadPool));
+            }
+            results.add(dispatcher.dispatch(event));
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Current statistics about the asynchronous calls of the listeners - compare
+     * {@link Configuration#asynchronous_listeners()}.
+     */
+    @NotNull
+    public List<ListenerMetrics> getListenerMetrics() {
+        List<ListenerMetrics> result = new ArrayList<>();
+        synchronized (listenerDispatchers) {
+            for (ListenerDispatcher dispatcher : listenerDispatchers.values()) {
+                result.add(dispatcher.getMetrics());
+            }
+        }
+        return result;
+    }
 
+    protected void triggerProcesses(@NotNull ReleaseChangeEvent event) {
         Collection<ReleaseChangeProcess> processes = processesFor(event.release(), null);
         for (ReleaseChangeProcess process : processes) {
             if (!process.isEnabled()) {
@@ -127,7 +280,7 @@ public class ReleaseChangeEventPublisherImpl implements ReleaseChangeEventPublis
             }
             try {
                 process.triggerProcessing(event);
-                deployProcess(process);
+                deployProcess(process, event.release().getChangeNumber());
             } catch (RuntimeException | InterruptedException e) {
                 LOG.error("Error when triggering process {} for {}", process, event, e);
             }
@@ -138,8 +291,10 @@ public class ReleaseChangeEventPublisherImpl implements ReleaseChangeEventPublis
      * Make sure {@link ReleaseChangeProcess#run()} is called later. If it's currently running, we queue it so that
      * it'll run after the current run is finished - compare {@link RescheduleWrapper#run()}. We rather call run once
      * too many - it is contractually obliged to do nothing if it hasn't anything to do.
+     *
+     * @param changeNumber the release change number the event was created with, if known
      */
-    protected void deployProcess(@NotNull ReleaseChangeProcess process) throws InterruptedException {
+    protected void deployProcess(@NotNull ReleaseChangeProcess process, @Nullable String changeNumber) throws InterruptedException {
         synchronized (lock) {
             Future<?> future = runningProcesses.get(process);
             if (future != null && future.isDone()) {
@@ -147,14 +302,128 @@ public class ReleaseChangeEventPublisherImpl implements ReleaseChangeEventPublis
                 runningProcesses.remove(process);
             }
             if (future == null) {
-                future = threadPool.submit(new RescheduleWrapper(process));
-                runningProcesses.put(process, future);
-            } else { // is scheduled or running - we have to call that again later.
+                scheduleProcess(process, changeNumber);
+            } else { // is running - we have to call that again later.
                 queuedProcesses.put(process, Boolean.TRUE);
             }
         }
     }
 
+    /**
+     * Debounces the start of a process: it is started when there were no new events for it for
+     * {@link Configuration#quiet_period_ms()}, but not later than {@link Configuration#max_delay_ms()} after the first
+     * event, or when the commit of the release change numbers of all its events is observed. The events themselves are
+     * collected by the process in {@link ReleaseChangeProcess#triggerProcessing(ReleaseChangeEvent)}.
+     * Synchronize {@link #lock} when calling this!
+     *
+     * @param changeNumber the release change number the event was created with; if null the process waits for the
+     *                     quiet period since we cannot recognize the commit of the event
+     */
+    protected void scheduleProcess(@NotNull ReleaseChangeProcess process, @Nullable String changeNumber) {
+        long now = System.currentTimeMillis();
+        PendingProcess pending = pendingProcesses.get(process);
+        if (pending == null) {
+            pending = new PendingProcess(process, now);
+            pendingProcesses.put(process, pending);
+        } else if (pending.timer != null) {
+            pending.timer.cancel(false);
+        }
+        if (changeNumber != null) {
+            pending.uncommittedChangeNumbers.add(changeNumber);
+        } else {
+            pending.unknownChanges = true;
+        }
+        long delay = Math.max(0, Math.min(configuration.quiet_period_ms(),
+                pending.firstEventTime + configuration.max_delay_ms() - now));
+        PendingProcess scheduled = pending;
+        pending.timer = scheduler.schedule(() -> startProcess(scheduled), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Submits a pending process to the thread pool, if it's still pending.
+     */
+    protected void startProcess(@NotNull PendingProcess pending) {
+        try {
+            synchronized (lock) {
+                //noinspection ObjectEquality : check whether it was already started
+                if (pendingProcesses.get(pending.process) != pending) {
+                    return;
+                }
+                pendingProcesses.remove(pending.process);
+                if (pending.timer != null) {
+                    pending.timer.cancel(false);
+                }
+                LOG.debug("Starting {} after {} ms", pending.process, System.currentTimeMillis() - pending.firstEventTime);
+                Future<?> future = threadPool.submit(new RescheduleWrapper(pending.process));
+                runningProcesses.put(pending.process, future);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Could not start {}", pending.process, e);
+        }
+    }
+
+    /**
+     * Starts the pending processes for a release root whose events are all committed now. Processes whose events
+     * came from other sessions that didn't commit yet keep waiting, since they'd read the old state otherwise.
+     * Likewise the events held back for the asynchronous listeners are delivered.
+     *
+     * @param committedChangeNumbers the release change numbers whose commit was observed
+     */
+    protected void commitObserved(@NotNull String releaseRootPath, @NotNull Collection<String> committedChangeNumbers) {
+        List<PendingProcess> toStart = new ArrayList<>();
+        synchronized (lock) {
+            for (PendingProcess pending : pendingProcesses.values()) {
+                if (releaseRootPath.equals(pending.process.getReleaseRootPath())) {
+                    pending.uncommittedChangeNumbers.removeAll(committedChangeNumbers);
+                    if (pending.uncommittedChangeNumbers.isEmpty() && !pending.unknownChanges) {
+                        toStart.add(pending);
+                    }
+                }
+            }
+        }
+        for (PendingProcess pending : toStart) {
+            startProcess(pending);
+        }
+        List<ListenerDispatcher> dispatchers;
+        synchronized (listenerDispatchers) {
+            dispatchers = new ArrayList<>(listenerDispatchers.values());
+        }
+        for (ListenerDispatcher dispatcher : dispatchers) {
+            dispatcher.commitsObserved(committedChangeNumbers);
+        }
+    }
+
+    /**
+     * A process waiting to be started.
+     */
+    protected static class PendingProcess {
+
+        protected final ReleaseChangeProcess process;
+
+        /** The time the first event was received since the last start of the process. */
+        protected final long firstEventTime;
+
+        /** The currently scheduled start. Synchronize the lock of the publisher when accessing this! */
+        protected ScheduledFuture<?> timer;
+
+        /**
+         * The release change numbers of the events for the process whose commit wasn't observed yet.
+         * Synchronize the lock of the publisher when accessing this!
+         */
+        protected final Set<String> uncommittedChangeNumbers = new HashSet<>();
+
+        /**
+         * True if there was an event without change number - then we can only wait for the quiet period.
+         * Synchronize the lock of the publisher when accessing this!
+         */
+        protected boolean unknownChanges;
+
+        protected PendingProcess(@NotNull ReleaseChangeProcess process, long firstEventTime) {
+            this.process = process;
+            this.firstEventTime = firstEventTime;
+        }
+    }
+
     /**
      * Organizes that a process is rescheduled after being run if that's needed.
      */
@@ -169,18 +438,17 @@ public class ReleaseChangeEventPublisherImpl implements ReleaseChangeEventPublis
         @Override
         public void run() {
             try {
-                Thread.sleep(WAIT_FOR_COMMIT_TIME_MS);
                 process.runReplication();
-            } catch (RuntimeException | InterruptedException e) { // forbidden
+            } catch (RuntimeException e) { // forbidden
                 LOG.error("Bug: Process threw exception", e);
             } finally {
                 try {
                     synchronized (lock) {
+                        runningProcesses.remove(process);
                         boolean queued = queuedProcesses.getOrDefault(process, false);
+                        queuedProcesses.remove(process);
                         if (queued || process.needsReschedule()) {
-                            Future<?> future = threadPool.submit(new RescheduleWrapper(process));
-                            runningProcesses.put(process, future);
-                            queuedProcesses.remove(process);
+                            scheduleProcess(process, null);
                         }
                     }
                 } catch (RuntimeException e) {
@@ -190,6 +458,364 @@ public class ReleaseChangeEventPublisherImpl implements ReleaseChangeEventPublis
         }
     }
 
+    /**
+     * Calls one listener in the background: the events are delivered one after another by a worker from the
+     * {@link #listenerThreadPool}, which ends when there is nothing to do. An event is held back until the commit of
+     * its release change number is observed, so that the listener doesn't read the state before the change - without
+     * the {@link #commitObserver}, or if the commit isn't observed in time, it is delivered after the
+     * {@link Configuration#quiet_period_ms()} resp. {@link Configuration#max_delay_ms()}, keeping the order of the
+     * events. At most {@link Configuration#listener_queue_size()} events can wait; if that's exceeded, the activation
+     * waits up to {@link Configuration#listener_queue_wait_ms()} and then drops the event for this listener.
+     * Since the resolver of the activation is not available in the background, the listener receives a copy of the
+     * event whose release is read with a service resolver that is open only during the delivery.
+     */
+    protected class ListenerDispatcher {
+
+        protected final ReleaseChangeEventListener listener;
+
+        protected final ThreadPool pool;
+
+        /** The deliveries that can run now, in the order of the events. */
+        protected final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+
+        /**
+         * The deliveries waiting for the commit of their change, in the order of the events.
+         * Synchronize over the deque when accessing this!
+         */
+        protected final Deque<HeldDelivery> held = new ArrayDeque<>();
+
+        /** Limits the number of events waiting in {@link #held} and {@link #queue}. */
+        protected final Semaphore places;
+
+        /** True while a worker is delivering the queued events. */
+        protected final AtomicBoolean workerRunning = new AtomicBoolean();
+
+        protected volatile boolean shutdown;
+
+        protected final AtomicLong delivered = new AtomicLong();
+        protected final AtomicLong failed = new AtomicLong();
+        protected final AtomicLong dropped = new AtomicLong();
+        protected final AtomicLong totalLatencyMs = new AtomicLong();
+        protected final AtomicLong maxLatencyMs = new AtomicLong();
+
+        protected ListenerDispatcher(@NotNull ReleaseChangeEventListener listener, int queueSize, @NotNull ThreadPool pool) {
+            this.listener = listener;
+            this.pool = pool;
+            this.places = new Semaphore(Math.max(1, queueSize));
+        }
+
+        @NotNull
+        protected CompletableFuture<Void> dispatch(@NotNull ReleaseChangeEvent event) {
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            if (shutdown) {
+                result.completeExceptionally(new ReleaseChangeFailedException("Could not publish to " + listener
+                        + " - shut down", event));
+                return result;
+            }
+            // read while the resolver of the activation is still open
+            String releaseRootPath = event.release().getReleaseRoot().getPath();
+            String releasePath = event.release().getPath();
+            String changeNumber = event.release().getChangeNumber();
+            try {
+                if (!places.tryAcquire(configuration.listener_queue_wait_ms(), TimeUnit.MILLISECONDS)) {
+                    dropped.incrementAndGet();
+                    LOG.error("Queue full for {} - dropping the event {}", listener, event);
+                    result.completeExceptionally(new ReleaseChangeFailedException("Queue full for " + listener, event));
+                    return result;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.completeExceptionally(new ReleaseChangeFailedException("Interrupted publishing to " + listener, e, event));
+                return result;
+            }
+            long queuedAt = System.currentTimeMillis();
+            Runnable delivery = () -> {
+                try {
+                    deliver(event, releaseRootPath, releasePath, queuedAt, result);
+                } finally {
+                    places.release();
+                }
+            };
+            long maxWait = commitObserver != null && changeNumber != null
+                    ? configuration.max_delay_ms() : configuration.quiet_period_ms();
+            synchronized (held) {
+                held.addLast(new HeldDelivery(releasePath, changeNumber, queuedAt + maxWait, delivery));
+            }
+            ScheduledExecutorService timer = scheduler;
+            try {
+                if (timer != null) {
+                    timer.schedule(this::releaseDeliveries, maxWait, TimeUnit.MILLISECONDS);
+                } else {
+                    releaseDeliveries(true);
+                }
+            } catch (RejectedExecutionException e) { // scheduler shut down - don't wait
+                releaseDeliveries(true);
+            }
+            return result;
+        }
+
+        /**
+         * Marks the held deliveries as committed whose change number is committed - or that are followed by a
+         * committed change of the same release, since each change overwrites the change number of the release.
+         */
+        protected void commitsObserved(@NotNull Collection<String> committedChangeNumbers) {
+            synchronized (held) {
+                Set<String> committedReleases = new HashSet<>();
+                Iterator<HeldDelivery> it = held.descendingIterator();
+                while (it.hasNext()) {
+                    HeldDelivery delivery = it.next();
+                    if (committedReleases.contains(delivery.releasePath)
+                            || (delivery.changeNumber != null && committedChangeNumbers.contains(delivery.changeNumber))) {
+                        delivery.committed = true;
+                        committedReleases.add(delivery.releasePath);
+                    }
+                }
+            }
+            releaseDeliveries();
+        }
+
+        protected void releaseDeliveries() {
+            releaseDeliveries(shutdown);
+        }
+
+        /**
+         * Moves the held deliveries into the queue whose commit was observed or whose waiting time is over, as long as
+         * that keeps the order of the events.
+         *
+         * @param all if true, all held deliveries are released
+         */
+        protected void releaseDeliveries(boolean all) {
+            boolean released = false;
+            synchronized (held) {
+                long now = System.currentTimeMillis();
+                HeldDelivery delivery;
+                while ((delivery = held.peekFirst()) != null
+                        && (all || delivery.committed || delivery.releaseTime <= now)) {
+                    held.removeFirst();
+                    if (!delivery.committed && !all) {
+                        LOG.info("Commit of {} not observed - delivering to {} anyway", delivery.changeNumber, listener);
+                    }
+                    queue.add(delivery.delivery);
+                    released = true;
+                }
+            }
+            if (released) {
+                startWorker();
+            }
+        }
+
+        protected void startWorker() {
+            if (workerRunning.compareAndSet(false, true)) {
+                try {
+                    pool.execute(this::work);
+                } catch (RuntimeException e) { // pool shut down - deliver what's there ourselves
+                    LOG.warn("Could not start worker for {} - delivering in the caller's thread", listener, e);
+                    work();
+                }
+            }
+        }
+
+        protected void work() {
+            try {
+                Runnable delivery;
+                while ((delivery = queue.poll()) != null) {
+                    delivery.run();
+                }
+            } finally {
+                workerRunning.set(false);
+            }
+            if (!queue.isEmpty()) { // dispatched after the last poll but before we finished
+                startWorker();
+            }
+        }
+
+        protected void deliver(@NotNull ReleaseChangeEvent event, @NotNull String releaseRootPath,
+                               @NotNull String releasePath, long queuedAt, @NotNull CompletableFuture<Void> result) {
+            try (ResourceResolver resolver = resolverFactory.getServiceResourceResolver(null)) {
+                listener.receive(detach(event, resolver, releaseRootPath, releasePath));
+                delivered.incrementAndGet();
+                LOG.debug("published to {} : {}", listener, event);
+                result.complete(null);
+            } catch (ReleaseChangeFailedException e) {
+                failed.incrementAndGet();
+                LOG.error("Error publishing to {} the event {}", listener, event, e);
+                result.completeExceptionally(e);
+            } catch (LoginException | RuntimeException e) {
+                failed.incrementAndGet();
+                LOG.error("Error publishing to {} the event {}", listener, event, e);
+                result.completeExceptionally(new ReleaseChangeFailedException("Error publishing to " + listener, e, event));
+            } finally {
+                long latency = System.currentTimeMillis() - queuedAt;
+                totalLatencyMs.addAndGet(latency);
+                maxLatencyMs.accumulateAndGet(latency, Math::max);
+            }
+        }
+
+        /**
+         * A copy of the event with the release read by the given resolver, so that the listener doesn't use the
+         * resolver of the activation.
+         */
+        @NotNull
+        protected ReleaseChangeEvent detach(@NotNull ReleaseChangeEvent event, @NotNull ResourceResolver resolver,
+                                            @NotNull String releaseRootPath, @NotNull String releasePath)
+                throws ReleaseChangeFailedException {
+            Resource releaseRoot = resolver.getResource(releaseRootPath);
+            Resource releaseNode = resolver.getResource(releasePath);
+            if (releaseRoot == null || releaseNode == null) {
+                throw new ReleaseChangeFailedException("Release not found (not committed?): " + releasePath, event);
+            }
+            return event.copyFor(new DefaultStagingReleaseManager.ReleaseImpl(releaseRoot, releaseNode));
+        }
+
+        @NotNull
+        protected ListenerMetrics getMetrics() {
+            ListenerMetrics metrics = new ListenerMetrics();
+            metrics.listener = listener.getClass().getName() + "@" + System.identityHashCode(listener);
+            synchronized (held) {
+                metrics.queued = queue.size() + held.size();
+            }
+            metrics.delivered = delivered.get();
+            metrics.failed = failed.get();
+            metrics.dropped = dropped.get();
+            long count = metrics.delivered + metrics.failed;
+            metrics.averageLatencyMs = count > 0 ? totalLatencyMs.get() / count : 0;
+            metrics.maxLatencyMs = maxLatencyMs.get();
+            return metrics;
+        }
+
+        /** Stops accepting events; the events already queued or held are still delivered. */
+        protected void shutdown() {
+            shutdown = true;
+            releaseDeliveries(true);
+        }
+    }
+
+    /**
+     * A delivery to a listener waiting for the commit of the change.
+     */
+    protected static class HeldDelivery {
+
+        protected final String releasePath;
+
+        /** The release change number the event was created with, if known. */
+        protected final String changeNumber;
+
+        /** When the delivery runs even if the commit wasn't observed. */
+        protected final long releaseTime;
+
+        protected final Runnable delivery;
+
+        /** Synchronize the deque of the dispatcher when accessing this! */
+        protected boolean committed;
+
+        protected HeldDelivery(@NotNull String releasePath, @Nullable String changeNumber, long releaseTime,
+                               @NotNull Runnable delivery) {
+            this.releasePath = releasePath;
+            this.changeNumber = changeNumber;
+            this.releaseTime = releaseTime;
+            this.delivery = delivery;
+        }
+    }
+
+    /**
+     * Statistics about the asynchronous calls of a listener.
+     */
+    public static class ListenerMetrics {
+        /**
+         * The class and identity of the listener.
+         */
+        public String listener;
+        /**
+         * The number of events currently waiting in the queue or for the commit of their change.
+         */
+        public int queued;
+        /**
+         * The number of events successfully received by the listener.
+         */
+        public long delivered;
+        /**
+         * The number of events where the listener threw an exception.
+         */
+        public long failed;
+        /**
+         * The number of events that were not delivered since the queue stayed full.
+         */
+        public long dropped;
+        /**
+         * The average time from queueing an event until the listener received it.
+         */
+        public long averageLatencyMs;
+        /**
+         * The maximum time from queueing an event until the listener received it.
+         */
+        public long maxLatencyMs;
+
+        @Override
+        public String toString() {
+            return "ListenerMetrics(" + listener + ",queued=" + queued + ",delivered=" + delivered + ",failed="
+                    + failed + ",dropped=" + dropped + ",avgLatency=" + averageLatencyMs + ",maxLatency="
+                    + maxLatencyMs + ")";
+        }
+    }
+
+    /**
+     * Observes the changes of the {@link StagingConstants#PROP_CHANGE_NUMBER} of the releases: since every change of
+     * a release sets a new change number, the event shows that the change was committed, and the processes for the
+     * release root can start without waiting for the quiet period.
+     */
+    protected class CommitObserver implements EventListener {
+
+        protected final Session session;
+
+        protected CommitObserver(@NotNull Session session) throws RepositoryException {
+            this.session = session;
+            session.getWorkspace().getObservationManager().addEventListener(this,
+                    Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED, StagingConstants.RELEASE_ROOT_PATH, true,
+                    null, null, false);
+        }
+
+        /**
+         * Collects the committed change numbers by release root. The events don't carry the value, so we read the
+         * current one - if that's already changed again, the process just waits for the quiet period.
+         */
+        @Override
+        public void onEvent(EventIterator events) {
+            Map<String, Set<String>> changeNumbersByReleaseRoot = new LinkedHashMap<>();
+            try {
+                session.refresh(false);
+            } catch (RepositoryException e) {
+                LOG.warn("Could not refresh session", e);
+            }
+            while (events.hasNext()) {
+                try {
+                    String path = events.nextEvent().getPath();
+                    if (path.endsWith('/' + StagingConstants.PROP_CHANGE_NUMBER)) {
+                        String releaseRootPath = ReleaseMetadataCache.releaseRootPathOf(path);
+                        if (releaseRootPath != null && session.propertyExists(path)) {
+                            changeNumbersByReleaseRoot.computeIfAbsent(releaseRootPath, (k) -> new HashSet<>())
+                                    .add(session.getProperty(path).getString());
+                        }
+                    }
+                } catch (RepositoryException e) {
+                    LOG.warn("Could not read event", e);
+                }
+            }
+            for (Map.Entry<String, Set<String>> entry : changeNumbersByReleaseRoot.entrySet()) {
+                LOG.debug("Commit observed for {} : {}", entry.getKey(), entry.getValue());
+                commitObserved(entry.getKey(), entry.getValue());
+            }
+        }
+
+        protected void close() {
+            try {
+                session.getWorkspace().getObservationManager().removeEventListener(this);
+            } catch (RepositoryException e) {
+                LOG.warn("Could not remove observation", e);
+            }
+            session.logout();
+        }
+    }
+
     @NotNull
     @Override
     public Collection<ReleaseChangeProcess> processesFor(@Nullable Release release, @Nullable String stage) {
@@ -256,9 +882,10 @@ public class ReleaseChangeEventPublisherImpl implements ReleaseChangeEventPublis
                     info.hasRelease = process.hasRelease();
                     info.active = process.isActive();
                     info.completionPercentage = process.getCompletionPercentage();
-                    process.updateSynchronized();
+                    notePolled(process);
                     info.isSynchronized = process.isSynchronized(releaseRoot.getResourceResolver());
                     info.lastReplicationTimestamp = process.getLastReplicationTimestamp();
+                    info.synchronizedCheckedAt = process.getSynchronizedCheckedAt();
                     info.history.putAll(process.getHistory());
                 } catch (Exception ex) {
                     // there was an IllegalArgumentException in a process (bad configuration)
@@ -294,6 +921,7 @@ public class ReleaseChangeEventPublisherImpl implements ReleaseChangeEventPublis
                 if (!process.isActive()) {
                     continue;
                 }
+                notePolled(process);
                 if (process.isEnabled() && result.everythingIsSynchronized
                         && !Boolean.TRUE.equals(process.isSynchronized(releaseRoot.getResourceResolver()))) {
                     result.everythingIsSynchronized = false;
@@ -329,6 +957,54 @@ public class ReleaseChangeEventPublisherImpl implements ReleaseChangeEventPublis
         return result;
     }
 
+    /**
+     * Remembers that the state of the process is requested, so that it's synchronization state is kept current.
+     */
+    protected void notePolled(@NotNull ReleaseChangeProcess process) {
+        synchronized (lock) {
+            polledProcesses.put(process, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Refreshes the synchronization state of the processes whose state was requested lately, in the thread pool.
+     * The status requests just read the state cached by the processes, since determining it can involve requests to
+     * remote systems.
+     */
+    protected void refreshPolledProcesses() {
+        long interval = TimeUnit.SECONDS.toMillis(configuration.state_refresh_interval_s());
+        List<ReleaseChangeProcess> processes = new ArrayList<>();
+        synchronized (lock) {
+            long unusedSince = System.currentTimeMillis() - 10 * interval;
+            polledProcesses.values().removeIf((lastPolled) -> lastPolled < unusedSince);
+            processes.addAll(polledProcesses.keySet());
+        }
+        ThreadPool pool = threadPool;
+        if (processes.isEmpty() || pool == null || !refreshRunning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            pool.execute(() -> {
+                try {
+                    for (ReleaseChangeProcess process : processes) {
+                        try {
+                            if (process.isEnabled()) {
+                                process.updateSynchronized();
+                            }
+                        } catch (RuntimeException e) {
+                            LOG.error("Could not refresh synchronization state of {}", process, e);
+                        }
+                    }
+                } finally {
+                    refreshRunning.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            refreshRunning.set(false);
+            LOG.error("Could not schedule refresh of synchronization states", e);
+        }
+    }
+
     @Override
     public void abortReplication(@Nullable Resource releaseRoot, @Nullable String stage) {
         for (ReleaseChangeProcess releaseChangeProcess : processesFor(releaseRoot, stage)) {
@@ -367,22 +1043,129 @@ public class ReleaseChangeEventPublisherImpl implements ReleaseChangeEventPublis
 
     @Activate
     @Modified
-    protected void activate() {
+    protected void activate(Configuration configuration) {
         if (threadPool != null) {
             deactivate();
         }
         LOG.info("activate");
+        this.configuration = configuration;
         this.threadPool = threadPoolManager.get(THREADPOOL_NAME);
+        this.listenerThreadPool = threadPoolManager.get(THREADPOOL_NAME + "-listeners");
+        this.scheduler = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, THREADPOOL_NAME + "-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (configuration.state_refresh_interval_s() > 0) {
+            this.scheduler.scheduleWithFixedDelay(this::refreshPolledProcesses, configuration.state_refresh_interval_s(),
+                    configuration.state_refresh_interval_s(), TimeUnit.SECONDS);
+        }
+        if (configuration.commit_trigger()) {
+            ResourceResolver resolver = null;
+            try {
+                resolver = resolverFactory.getServiceResourceResolver(null);
+                Session session = resolver.adaptTo(Session.class);
+                if (session != null) {
+                    this.commitObserver = new CommitObserver(session);
+                    resolver = null; // closed by the observer
+                }
+            } catch (LoginException | RepositoryException e) {
+                LOG.error("Could not observe commits - processes start after the quiet period", e);
+            } finally {
+                if (resolver != null) {
+                    resolver.close();
+                }
+            }
+        }
     }
 
     @Deactivate
     protected void deactivate() {
         LOG.info("deactivate");
+        CommitObserver oldCommitObserver = this.commitObserver;
+        this.commitObserver = null;
+        if (oldCommitObserver != null) {
+            oldCommitObserver.close();
+        }
+        List<PendingProcess> pending;
+        synchronized (lock) {
+            pending = new ArrayList<>(pendingProcesses.values());
+        }
+        for (PendingProcess pendingProcess : pending) { // start what was waiting before we shut down
+            startProcess(pendingProcess);
+        }
+        List<ListenerDispatcher> dispatchers;
+        synchronized (listenerDispatchers) {
+            dispatchers = new ArrayList<>(listenerDispatchers.values());
+            listenerDispatchers.clear();
+        }
+        for (ListenerDispatcher dispatcher : dispatchers) {
+            dispatcher.shutdown();
+        }
+        ScheduledExecutorService oldScheduler = this.scheduler;
+        this.scheduler = null;
+        if (oldScheduler != null) {
+            oldScheduler.shutdownNow();
+        }
         ThreadPool oldThreadPool = this.threadPool;
         this.threadPool = null;
         if (oldThreadPool != null) {
             threadPoolManager.release(oldThreadPool);
         }
+        ThreadPool oldListenerThreadPool = this.listenerThreadPool;
+        this.listenerThreadPool = null;
+        if (oldListenerThreadPool != null) {
+            threadPoolManager.release(oldListenerThreadPool);
+        }
+    }
+
+    @ObjectClassDefinition(
+            name = "Composum Platform Replication Service Publisher Configuration"
+    )
+    public @interface Configuration {
+
+        @AttributeDefinition(
+                name = "Quiet Period",
+                description = "A replication starts when there were no further changes of the release for this many milliseconds. Unless the commit is observed, this is also the time given the change to be committed - if this is too low, this can lead to consistency problems!"
+        )
+        long quiet_period_ms() default 5000;
+
+        @AttributeDefinition(
+                name = "Maximum Delay",
+                description = "The maximum time in milliseconds a replication waits for a quiet period during an ongoing series of changes"
+        )
+        long max_delay_ms() default 30000;
+
+        @AttributeDefinition(
+                name = "Commit Trigger",
+                description = "If true, a replication starts immediately when the commits of the release change numbers of all events for it are observed, instead of waiting for the quiet period"
+        )
+        boolean commit_trigger() default true;
+
+        @AttributeDefinition(
+                name = "Asynchronous Listeners",
+                description = "If true, the listeners are informed about the release changes in the background, each with its own queue, so that the activation doesn't wait for them. The events are delivered when their commit is observed (or after the quiet period / maximum delay), and the listeners receive a copy of the event whose release is read with a service resolver, so they see only committed content. Caution: then a failure of a listener doesn't roll back the activation."
+        )
+        boolean asynchronous_listeners() default false;
+
+        @AttributeDefinition(
+                name = "Listener Queue Size",
+                description = "The maximum number of events queued for each listener if they are called asynchronously, including those waiting for their commit; if the queue is full, the activation waits for the Listener Queue Wait and then drops the event for that listener"
+        )
+        int listener_queue_size() default 100;
+
+        @AttributeDefinition(
+                name = "Listener Queue Wait",
+                description = "The maximum time in milliseconds an activation waits for a place in the queue of a listener before the event is dropped for that listener and logged as error"
+        )
+        long listener_queue_wait_ms() default 1000;
+
+        @AttributeDefinition(
+                name = "State Refresh Interval",
+                description = "The interval in seconds in which the synchronization state of the replications whose state is displayed is refreshed in the background - status requests just read the cached state. 0 disables the background refresh; then the state is refreshed when it gets too old."
+        )
+        long state_refresh_interval_s() default 60;
+
     }
 
 
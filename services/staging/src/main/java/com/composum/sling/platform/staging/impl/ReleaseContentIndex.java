@@ -0,0 +1,177 @@
+package com.composum.sling.platform.staging.impl;
+
+import com.composum.sling.platform.staging.ReleasedVersionable;
+import org.apache.commons.collections4.IteratorUtils;
+import org.apache.sling.api.resource.Resource;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An index of the contents of one state of a release (release uuid and change number): the
+ * {@link ReleasedVersionable}s of all version references in the workspace copy of the release by their path relative
+ * to the release root, and the paths by version history uuid and versionable uuid. It is built with one walk over the
+ * workspace copy and replaces the queries for the version references of the release. The
+ * {@link DefaultStagingReleaseManager} keeps indexes between requests; these must not be modified - an update of the
+ * release works on a {@link #copy()} which is maintained along with the changes. All returned
+ * {@link ReleasedVersionable}s are copies.
+ */
+@NotThreadSafe
+public class ReleaseContentIndex {
+
+    protected final String releaseUuid;
+
+    protected String changeNumber;
+
+    /** relative path to the released versionable, sorted by path */
+    protected final TreeMap<String, ReleasedVersionable> byPath;
+
+    /** version history uuid to relative path, sorted by the version history uuid */
+    protected final TreeMap<String, String> pathByVersionHistory;
+
+    protected final Map<String, String> pathByVersionableUuid;
+
+    /**
+     * Builds the index by traversing the workspace copy of the release.
+     *
+     * @param release      the release to index
+     * @param changeNumber the change number of the release the index is built for
+     */
+    public ReleaseContentIndex(@NotNull DefaultStagingReleaseManager.ReleaseImpl release, @NotNull String changeNumber) {
+        this.releaseUuid = release.getUuid();
+        this.changeNumber = changeNumber;
+        this.byPath = new TreeMap<>();
+        this.pathByVersionHistory = new TreeMap<>();
+        this.pathByVersionableUuid = new HashMap<>();
+        Resource workspaceCopy = release.getWorkspaceCopyNode();
+        for (Resource child : workspaceCopy.getChildren()) {
+            index(workspaceCopy, child);
+        }
+    }
+
+    protected ReleaseContentIndex(@NotNull ReleaseContentIndex original) {
+        this.releaseUuid = original.releaseUuid;
+        this.changeNumber = original.changeNumber;
+        this.byPath = new TreeMap<>(original.byPath);
+        this.pathByVersionHistory = new TreeMap<>(original.pathByVersionHistory);
+        this.pathByVersionableUuid = new HashMap<>(original.pathByVersionableUuid);
+    }
+
+    protected void index(@NotNull Resource workspaceCopy, @NotNull Resource resource) {
+        if (DefaultStagingReleaseManager.VersionReferenceImpl.isVersionReference(resource)) {
+            put(ReleasedVersionable.fromVersionReference(workspaceCopy, resource));
+        } else {
+            for (Resource child : resource.getChildren()) {
+                index(workspaceCopy, child);
+            }
+        }
+    }
+
+    /** A modifiable copy of this index. */
+    @NotNull
+    public ReleaseContentIndex copy() {
+        return new ReleaseContentIndex(this);
+    }
+
+    /**
+     * Records the version reference at {@link ReleasedVersionable#getRelativePath()}, replacing what was there.
+     *
+     * @return the replaced entry, if there was one
+     */
+    @Nullable
+    public ReleasedVersionable put(@NotNull ReleasedVersionable releasedVersionable) {
+        String relativePath = releasedVersionable.getRelativePath();
+        ReleasedVersionable replaced = remove(relativePath);
+        ReleasedVersionable copy = releasedVersionable.clone();
+        byPath.put(relativePath, copy);
+        if (copy.getVersionHistory() != null) {
+            pathByVersionHistory.put(copy.getVersionHistory(), relativePath);
+        }
+        if (copy.getVersionableUuid() != null) {
+            pathByVersionableUuid.put(copy.getVersionableUuid(), relativePath);
+        }
+        return replaced;
+    }
+
+    /**
+     * Records that there is no version reference at the relative path anymore.
+     *
+     * @return the removed entry, if there was one
+     */
+    @Nullable
+    public ReleasedVersionable remove(@NotNull String relativePath) {
+        ReleasedVersionable removed = byPath.remove(relativePath);
+        if (removed != null) {
+            if (removed.getVersionHistory() != null) {
+                pathByVersionHistory.remove(removed.getVersionHistory(), relativePath);
+            }
+            pathByVersionableUuid.remove(removed.getVersionableUuid(), relativePath);
+        }
+        return removed;
+    }
+
+    /** All released versionables, sorted by their relative path. */
+    @NotNull
+    public List<ReleasedVersionable> list() {
+        List<ReleasedVersionable> result = new ArrayList<>(byPath.size());
+        for (ReleasedVersionable releasedVersionable : byPath.values()) {
+            result.add(releasedVersionable.clone());
+        }
+        return result;
+    }
+
+    /** Lazily returns all released versionables with a version history, ordered by the version history uuid. */
+    @NotNull
+    public Iterator<ReleasedVersionable> iterateByVersionHistory() {
+        return IteratorUtils.transformedIterator(pathByVersionHistory.values().iterator(), this::getByPath);
+    }
+
+    @Nullable
+    public ReleasedVersionable getByPath(@NotNull String relativePath) {
+        ReleasedVersionable result = byPath.get(relativePath);
+        return result != null ? result.clone() : null;
+    }
+
+    @Nullable
+    public ReleasedVersionable findByVersionHistory(@NotNull String versionHistoryUuid) {
+        String relativePath = pathByVersionHistory.get(versionHistoryUuid);
+        return relativePath != null ? getByPath(relativePath) : null;
+    }
+
+    /** The relative path of the version reference for the versionable, if there is one. */
+    @Nullable
+    public String findPathByVersionableUuid(@Nullable String versionableUuid) {
+        return versionableUuid != null ? pathByVersionableUuid.get(versionableUuid) : null;
+    }
+
+    @NotNull
+    public String getReleaseUuid() {
+        return releaseUuid;
+    }
+
+    @NotNull
+    public String getChangeNumber() {
+        return changeNumber;
+    }
+
+    /** Records the change number of the release after a change maintained in a {@link #copy()}. */
+    public void setChangeNumber(@NotNull String changeNumber) {
+        this.changeNumber = changeNumber;
+    }
+
+    public int size() {
+        return byPath.size();
+    }
+
+    @Override
+    public String toString() {
+        return "ReleaseContentIndex(" + releaseUuid + "," + changeNumber + "," + size() + ")";
+    }
+}
@@ -0,0 +1,60 @@
+package com.composum.sling.platform.staging.impl;
+
+import com.composum.sling.platform.staging.ReleasedVersionable;
+import org.apache.commons.collections4.iterators.PeekingIterator;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Merge-join of the contents of two releases, both ordered by the version history uuid, which returns the
+ * {@link ReleasedVersionable}s of the release which are new or changed wrt. the previous release and those of the
+ * previous release which were removed, with a null {@link ReleasedVersionable#getVersionUuid()}.
+ */
+class ReleaseDifferenceIterator implements Iterator<ReleasedVersionable> {
+
+    protected final PeekingIterator<ReleasedVersionable> current;
+    protected final PeekingIterator<ReleasedVersionable> previous;
+    protected ReleasedVersionable next;
+
+    /**
+     * @param current  the contents of the release, ordered by version history
+     * @param previous the contents of the release compared to, ordered by version history
+     */
+    ReleaseDifferenceIterator(@NotNull Iterator<ReleasedVersionable> current,
+                              @NotNull Iterator<ReleasedVersionable> previous) {
+        this.current = PeekingIterator.peekingIterator(current);
+        this.previous = PeekingIterator.peekingIterator(previous);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && (current.hasNext() || previous.hasNext())) {
+            int comparison = !previous.hasNext() ? -1 : !current.hasNext() ? 1 :
+                    current.peek().getVersionHistory().compareTo(previous.peek().getVersionHistory());
+            if (comparison < 0) { // new
+                next = current.next();
+            } else if (comparison > 0) { // removed
+                next = previous.next();
+                next.setVersionUuid(null);
+            } else {
+                ReleasedVersionable releasedVersionable = current.next();
+                if (!releasedVersionable.equals(previous.next())) {
+                    next = releasedVersionable;
+                }
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public ReleasedVersionable next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ReleasedVersionable result = next;
+        next = null;
+        return result;
+    }
+}
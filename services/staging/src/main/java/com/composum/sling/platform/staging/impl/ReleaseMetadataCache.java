@@ -0,0 +1,245 @@
+package com.composum.sling.platform.staging.impl;
+
+import com.composum.sling.platform.staging.StagingConstants;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.Immutable;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.jcr.observation.ObservationManager;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.composum.sling.core.util.CoreConstants.PROP_UUID;
+import static com.composum.sling.platform.staging.StagingConstants.NODE_RELEASES;
+import static com.composum.sling.platform.staging.StagingConstants.RELEASE_ROOT_PATH;
+
+/**
+ * Keeps immutable snapshots of where the release nodes of each release root are (path by release uuid), read with a
+ * service resolver, so that the {@link DefaultStagingReleaseManager} can look up releases without reading all release
+ * nodes. Only the location is cached: the release metadata (number, marks, closed flag, change number) is still read
+ * from the release node with the caller's resolver, so that access control applies and the values are never stale. A snapshot is dropped when release nodes of its release root are added, removed or moved, observed with JCR
+ * observation below {@link StagingConstants#RELEASE_ROOT_PATH}; changes of the content and metadata within the
+ * releases (e.g. activations, which change the change number) don't matter for the mapping and are ignored. Readers
+ * just get the current snapshot from a concurrent map. Committed content only: callers with pending changes must not use the snapshots. Since
+ * observation events arrive asynchronously, a snapshot can lag shortly behind a commit; users of a snapshot have to
+ * validate what they find against the repository and fall back to reading it if it doesn't match.
+ */
+@Component(
+        service = ReleaseMetadataCache.class,
+        property = {
+                Constants.SERVICE_DESCRIPTION + "=Composum Platform Staging Release Metadata Cache"
+        },
+        immediate = true
+)
+public class ReleaseMetadataCache implements EventListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReleaseMetadataCache.class);
+
+    protected static final int EVENT_TYPES = Event.NODE_ADDED | Event.NODE_REMOVED | Event.NODE_MOVED |
+            Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+
+    @Reference
+    protected ResourceResolverFactory resolverFactory;
+
+    /** The resolver of the {@link #observationSession}; closed on deactivation. */
+    protected volatile ResourceResolver observationResolver;
+
+    /** The session the listener is registered with; null if the observation could not be registered. */
+    protected volatile Session observationSession;
+
+    /** The snapshots by the path of the release root. */
+    protected final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    /** Counts the invalidations, to avoid putting a snapshot read before a change into the cache. */
+    protected final AtomicLong invalidations = new AtomicLong();
+
+    @Activate
+    protected void activate() {
+        ResourceResolver resolver = null;
+        try {
+            resolver = resolverFactory.getServiceResourceResolver(null);
+            Session session = resolver.adaptTo(Session.class);
+            if (session == null) {
+                LOG.warn("No JCR session - release metadata cache disabled");
+                return;
+            }
+            ObservationManager observationManager = session.getWorkspace().getObservationManager();
+            observationManager.addEventListener(this, EVENT_TYPES, RELEASE_ROOT_PATH, true,
+                    null, null, false);
+            observationResolver = resolver;
+            observationSession = session;
+            resolver = null; // closed on deactivation
+        } catch (LoginException | RepositoryException e) {
+            LOG.error("Could not register observation - release metadata cache disabled", e);
+        } finally {
+            if (resolver != null) {
+                resolver.close();
+            }
+        }
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        Session session = observationSession;
+        observationSession = null;
+        if (session != null) {
+            try {
+                session.getWorkspace().getObservationManager().removeEventListener(this);
+            } catch (RepositoryException e) {
+                LOG.warn("Could not remove observation", e);
+            }
+        }
+        ResourceResolver resolver = observationResolver;
+        observationResolver = null;
+        if (resolver != null) {
+            resolver.close();
+        }
+        snapshots.clear();
+    }
+
+    @Override
+    public void onEvent(EventIterator events) {
+        while (events.hasNext()) {
+            try {
+                invalidate(events.nextEvent().getPath());
+            } catch (RepositoryException e) {
+                LOG.warn("Could not read event - clearing cache", e);
+                invalidateAll();
+            }
+        }
+    }
+
+    /** Drops the snapshot of the release root the changed path in the release data belongs to, if that's affected. */
+    protected void invalidate(@Nullable String changedPath) {
+        if (changedPath != null && !affectsReleaseNodes(changedPath)) {
+            return;
+        }
+        invalidations.incrementAndGet();
+        String releaseRootPath = releaseRootPathOf(changedPath);
+        if (releaseRootPath != null) {
+            snapshots.remove(releaseRootPath);
+        } else {
+            snapshots.clear();
+        }
+    }
+
+    /**
+     * The path of the release root a path in the release data below {@link StagingConstants#RELEASE_ROOT_PATH}
+     * belongs to, e.g. /content/site for /var/composum/content/site/cpl:releases/r1/root .
+     *
+     * @return the release root path, or null if the path is not within the releases of a release root
+     */
+    @Nullable
+    static String releaseRootPathOf(@Nullable String releaseDataPath) {
+        int releasesPos = releaseDataPath != null ? releaseDataPath.indexOf('/' + NODE_RELEASES) : -1;
+        if (releasesPos > RELEASE_ROOT_PATH.length() && releaseDataPath.startsWith(RELEASE_ROOT_PATH + '/')) {
+            return releaseDataPath.substring(RELEASE_ROOT_PATH.length(), releasesPos);
+        }
+        return null;
+    }
+
+    /**
+     * Whether a change at the path can change where the release nodes are: that is a change at or above the releases
+     * node, or of a release node, its properties or its direct children - not one within the workspace copy or the
+     * metadata of a release, e.g. /var/composum/content/site/cpl:releases/r1/root/page .
+     */
+    static boolean affectsReleaseNodes(@NotNull String changedPath) {
+        int releasesPos = changedPath.indexOf('/' + NODE_RELEASES + '/');
+        if (releasesPos < 0) {
+            return true;
+        }
+        String withinReleases = changedPath.substring(releasesPos + NODE_RELEASES.length() + 2);
+        return StringUtils.countMatches(withinReleases, '/') < 2;
+    }
+
+    protected void invalidateAll() {
+        invalidations.incrementAndGet();
+        snapshots.clear();
+    }
+
+    /**
+     * The current snapshot of the release nodes of a release root.
+     *
+     * @return the snapshot, or null if the cache is not available
+     */
+    @Nullable
+    public Snapshot getSnapshot(@NotNull String releaseRootPath) {
+        if (observationSession == null) {
+            return null;
+        }
+        Snapshot snapshot = snapshots.get(releaseRootPath);
+        if (snapshot == null) {
+            long invalidationCount = invalidations.get();
+            try (ResourceResolver resolver = resolverFactory.getServiceResourceResolver(null)) {
+                snapshot = new Snapshot(releaseRootPath,
+                        resolver.getResource(RELEASE_ROOT_PATH + releaseRootPath + '/' + NODE_RELEASES));
+            } catch (LoginException e) {
+                LOG.error("Could not read releases of {}", releaseRootPath, e);
+                return null;
+            }
+            if (invalidations.get() == invalidationCount) {
+                snapshots.put(releaseRootPath, snapshot);
+            }
+        }
+        return snapshot;
+    }
+
+    /** Where the release nodes of a release root are. */
+    @Immutable
+    public static class Snapshot {
+
+        protected final String releaseRootPath;
+
+        protected final Map<String, String> releasePathByUuid;
+
+        protected Snapshot(@NotNull String releaseRootPath, @Nullable Resource releasesNode) {
+            this.releaseRootPath = releaseRootPath;
+            Map<String, String> releasePathByUuid = new HashMap<>();
+            if (releasesNode != null) {
+                for (Resource releaseNode : releasesNode.getChildren()) {
+                    String uuid = releaseNode.getValueMap().get(PROP_UUID, String.class);
+                    if (uuid != null) {
+                        releasePathByUuid.put(uuid, releaseNode.getPath());
+                    }
+                }
+            }
+            this.releasePathByUuid = Collections.unmodifiableMap(releasePathByUuid);
+        }
+
+        @NotNull
+        public String getReleaseRootPath() {
+            return releaseRootPath;
+        }
+
+        /** The path of the release node of the release with the given uuid. */
+        @Nullable
+        public String getReleasePath(@NotNull String releaseUuid) {
+            return releasePathByUuid.get(releaseUuid);
+        }
+
+        @Override
+        public String toString() {
+            return "ReleaseMetadataCache.Snapshot(" + releaseRootPath + "," + releasePathByUuid.size() + ")";
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.composum.sling.platform.staging.impl;
+
+import com.composum.sling.core.ResourceHandle;
+import com.composum.sling.core.util.ResourceUtil;
+import com.composum.sling.platform.staging.StagingConstants;
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.api.resource.Resource;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An immutable index of the versionables of one state of a release (release uuid and change number): maps the paths
+ * relative to the release root of the version references to the paths of the referenced frozen nodes, and records the
+ * deactivated paths. This lets the {@link StagingResourceResolver} jump directly to the frozen node of a versionable
+ * instead of walking the workspace copy of the release level by level. Paths which are not covered by the index are
+ * resolved by the walk, as before. The staging queries use the index to find the version reference of a version.
+ * Since the index contains only what the resolver it was built with can read, it must only be used for resolvers of
+ * the same user ({@link #getUserId()}).
+ */
+@Immutable
+public class ReleasePathIndex {
+
+    /** The result of {@link #locate(String)}: the frozen node containing a path, or null if the path is hidden. */
+    public static final class Location {
+
+        @Nullable
+        protected final String frozenNodePath;
+
+        protected final String versionablePath;
+
+        protected Location(@Nullable String frozenNodePath, @NotNull String versionablePath) {
+            this.frozenNodePath = frozenNodePath;
+            this.versionablePath = versionablePath;
+        }
+
+        /** The path of the frozen node of the versionable containing the path; null if the path is deactivated. */
+        @Nullable
+        public String getFrozenNodePath() {
+            return frozenNodePath;
+        }
+
+        /** The path of the versionable (or the deactivated node) relative to the release root. */
+        @NotNull
+        public String getVersionablePath() {
+            return versionablePath;
+        }
+    }
+
+    protected final String releaseUuid;
+
+    protected final String changeNumber;
+
+    @Nullable
+    protected final String userId;
+
+    /** relative path of a version reference to the path of its frozen node; null value for deactivated ones */
+    protected final Map<String, String> versionables;
+
+    /** relative paths of deactivated nodes which are no version references */
+    protected final Set<String> deactivated;
+
+    /** version uuid to frozen node path - this never changes and can be reused for the next change of a release */
+    protected final Map<String, String> frozenNodePaths;
+
+    /** version uuid to the relative path of the active version reference referring to it */
+    protected final Map<String, String> versionReferencePaths;
+
+    /**
+     * Builds the index by traversing the workspace copy of the release.
+     *
+     * @param release      the release to index
+     * @param changeNumber the change number of the release the index is built for
+     * @param previous     an index of a previous state of the release whose version lookups are reused; may be null
+     */
+    public ReleasePathIndex(@NotNull DefaultStagingReleaseManager.ReleaseImpl release, @NotNull String changeNumber,
+                            @Nullable ReleasePathIndex previous) {
+        this.releaseUuid = release.getUuid();
+        this.changeNumber = changeNumber;
+        this.userId = release.getReleaseRoot().getResourceResolver().getUserID();
+        Map<String, String> versionables = new HashMap<>();
+        Set<String> deactivated = new HashSet<>();
+        Map<String, String> frozenNodePaths = new HashMap<>();
+        Map<String, String> versionReferencePaths = new HashMap<>();
+        Map<String, String> knownFrozenNodePaths = previous != null && previous.releaseUuid.equals(releaseUuid)
+                && Objects.equals(previous.userId, userId)
+                ? previous.frozenNodePaths : Collections.emptyMap();
+        for (Resource child : release.getWorkspaceCopyNode().getChildren()) {
+            index(child, child.getName(), versionables, deactivated, frozenNodePaths, versionReferencePaths,
+                    knownFrozenNodePaths);
+        }
+        this.versionables = Collections.unmodifiableMap(versionables);
+        this.deactivated = Collections.unmodifiableSet(deactivated);
+        this.frozenNodePaths = Collections.unmodifiableMap(frozenNodePaths);
+        this.versionReferencePaths = Collections.unmodifiableMap(versionReferencePaths);
+    }
+
+    protected static void index(@NotNull Resource resource, @NotNull String relativePath,
+                                @NotNull Map<String, String> versionables, @NotNull Set<String> deactivated,
+                                @NotNull Map<String, String> frozenNodePaths,
+                                @NotNull Map<String, String> versionReferencePaths,
+                                @NotNull Map<String, String> knownFrozenNodePaths) {
+        boolean isDeactivated = resource.getValueMap().get(StagingConstants.PROP_DEACTIVATED, false);
+        if (ResourceHandle.use(resource).isOfType(StagingConstants.TYPE_VERSIONREFERENCE)) {
+            String versionUuid = resource.getValueMap().get(StagingConstants.PROP_VERSION, String.class);
+            String frozenNodePath = null;
+            if (!isDeactivated && versionUuid != null) {
+                versionReferencePaths.put(versionUuid, relativePath);
+                frozenNodePath = knownFrozenNodePaths.get(versionUuid);
+                if (frozenNodePath == null) {
+                    Resource version = ResourceUtil.getByUuid(resource.getResourceResolver(), versionUuid);
+                    frozenNodePath = version != null ? version.getPath() + '/' + JcrConstants.JCR_FROZENNODE : null;
+                }
+                if (frozenNodePath == null) {
+                    return; // not accessible - leave that to the resolvers walk
+                }
+                frozenNodePaths.put(versionUuid, frozenNodePath);
+            }
+            versionables.put(relativePath, frozenNodePath);
+        } else if (isDeactivated) {
+            deactivated.add(relativePath);
+        } else {
+            for (Resource child : resource.getChildren()) {
+                index(child, relativePath + '/' + child.getName(), versionables, deactivated,
+                        frozenNodePaths, versionReferencePaths, knownFrozenNodePaths);
+            }
+        }
+    }
+
+    /**
+     * Finds the versionable containing the path.
+     *
+     * @param relativePath a normalized path relative to the release root
+     * @return the location of the path, or null if the path is not within a versionable of the release
+     */
+    @Nullable
+    public Location locate(@NotNull String relativePath) {
+        int end = relativePath.indexOf('/');
+        while (true) {
+            String prefix = end < 0 ? relativePath : relativePath.substring(0, end);
+            if (deactivated.contains(prefix)) {
+                return new Location(null, prefix);
+            }
+            if (versionables.containsKey(prefix)) {
+                return new Location(versionables.get(prefix), prefix);
+            }
+            if (end < 0) {
+                return null;
+            }
+            end = relativePath.indexOf('/', end + 1);
+        }
+    }
+
+    /**
+     * @return the path relative to the release root of the active version reference referring to the version,
+     * null if there is none
+     */
+    @Nullable
+    public String getVersionReferencePath(@NotNull String versionUuid) {
+        return versionReferencePaths.get(versionUuid);
+    }
+
+    @NotNull
+    public String getReleaseUuid() {
+        return releaseUuid;
+    }
+
+    @NotNull
+    public String getChangeNumber() {
+        return changeNumber;
+    }
+
+    /** The user whose resolver built the index. */
+    @Nullable
+    public String getUserId() {
+        return userId;
+    }
+
+    public int size() {
+        return versionables.size() + deactivated.size();
+    }
+
+    @Override
+    public String toString() {
+        return "ReleasePathIndex(" + releaseUuid + "," + changeNumber + "," + userId + "," + size() + ")";
+    }
+}
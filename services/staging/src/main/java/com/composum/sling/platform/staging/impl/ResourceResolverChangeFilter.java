@@ -1,7 +1,10 @@
 package com.composum.sling.platform.staging.impl;
 
 
+import com.composum.platform.commons.util.LruCache;
 import com.composum.sling.platform.staging.Release;
+import com.composum.sling.platform.staging.ReleaseChangeEvent;
+import com.composum.sling.platform.staging.ReleaseChangeEventListener;
 import com.composum.sling.platform.staging.ReleaseMapper;
 import com.composum.sling.platform.staging.StagingReleaseManager;
 import org.apache.commons.lang3.StringUtils;
@@ -32,17 +35,20 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
 
 
-/** A servlet filter to select the resource resolver for the release requested by access mode, or the URL parameters " + ResourceResolverChangeFilter.PARAM_CPM_RELEASE
- + " or " + ResourceResolverChangeFilter.PARAM_CPM_VERSION. */
+/**
+ * A servlet filter to select the resource resolver for the release requested by access mode, or the URL parameters " + ResourceResolverChangeFilter.PARAM_CPM_RELEASE
+ * + " or " + ResourceResolverChangeFilter.PARAM_CPM_VERSION. The release roots of the requested resources are cached;
+ * the cache is cleared on each release change event.
+ */
 @Component(
-        service = {Filter.class},
+        service = {Filter.class, ReleaseChangeEventListener.class},
         property = {
                 Constants.SERVICE_DESCRIPTION + "=Composum Platform Release Resolver Filter",
                 EngineConstants.SLING_FILTER_SCOPE + "=" + EngineConstants.FILTER_SCOPE_REQUEST,
@@ -50,7 +56,7 @@ import java.util.regex.Pattern;
         }
 )
 @Designate(ocd = ResourceResolverChangeFilter.Configuration.class)
-public class ResourceResolverChangeFilter implements Filter, ReleaseMapper {
+public class ResourceResolverChangeFilter implements Filter, ReleaseMapper, ReleaseChangeEventListener {
 
     private static Logger LOGGER = LoggerFactory.getLogger(ResourceResolverChangeFilter.class);
 
@@ -74,6 +80,12 @@ public class ResourceResolverChangeFilter implements Filter, ReleaseMapper {
     private List<Pattern> denyUriPatterns;
     private List<Pattern> denyPathPatterns;
 
+    /** the release root paths of the requested resource paths */
+    private volatile LruCache<String, String> releaseRoots = new LruCache<>(0);
+
+    /** the method handles to switch the resolver, resolved for the request implementation class on first use */
+    private volatile ResolverSwitch resolverSwitch;
+
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
 
@@ -103,7 +115,7 @@ public class ResourceResolverChangeFilter implements Filter, ReleaseMapper {
                         String releaseNumber = StringUtils.removeStart(releasedLabel, "composum-release-");
 
                         try {
-                            Release release = releaseManager.findRelease(requestedResource, releaseNumber);
+                            Release release = releaseManager.findRelease(getReleaseRoot(requestedResource), releaseNumber);
                             final ResourceResolver stagingResourceResolver =
                                     releaseManager.getResolverForRelease(release, this, true);
                             toClose = stagingResourceResolver;
@@ -146,27 +158,68 @@ public class ResourceResolverChangeFilter implements Filter, ReleaseMapper {
         }
     }
 
+    /**
+     * Returns the release root of the resource, using the cached path of the release root if possible. The
+     * resource itself is returned if the release root is not known yet - the release manager searches it then.
+     */
+    protected Resource getReleaseRoot(Resource resource) {
+        String rootPath = releaseRoots.get(resource.getPath());
+        Resource releaseRoot = rootPath != null ? resource.getResourceResolver().getResource(rootPath) : null;
+        if (releaseRoot == null) {
+            releaseRoot = releaseManager.findReleaseRoot(resource);
+            releaseRoots.put(resource.getPath(), releaseRoot.getPath());
+        }
+        return releaseRoot;
+    }
+
+    /** Release changes might have changed the release structure - so we just forget the cached release roots. */
+    @Override
+    public void receive(ReleaseChangeEvent releaseChangeEvent) {
+        releaseRoots.clear();
+    }
+
     protected void switchResolver(SlingHttpServletRequest slingRequestImpl, ResourceResolver stagingResourceResolver) throws ServletException {
         try {
-            // if we try to cache this method object, we had to synchronize it - so leave it for now
-            // org.apache.sling.engine.impl.SlingHttpServletRequestImpl.getRequestData()
-            final Method getRequestData = slingRequestImpl.getClass().getMethod("getRequestData");
-            final Object requestData = getRequestData.invoke(slingRequestImpl);
+            ResolverSwitch resolverSwitch = this.resolverSwitch;
+            if (resolverSwitch == null || resolverSwitch.requestClass != slingRequestImpl.getClass()) {
+                resolverSwitch = new ResolverSwitch(slingRequestImpl);
+                this.resolverSwitch = resolverSwitch;
+            }
+            resolverSwitch.switchResolver(slingRequestImpl, stagingResourceResolver, servletResolver);
+        } catch (Throwable e) { // MethodHandle.invoke declares Throwable
+            LOGGER.error("can not change ResourceResolver: ", e);
+            throw new ServletException("Error switching ResourceResolver", e);
+        }
+    }
 
-            // if we try to cache this method object, we had to synchronize it - so leave it for now
-            // org.apache.sling.engine.impl.request.RequestData.initResource(ResourceResolver resourceResolver)
-            final Method initResource = requestData.getClass()
-                    .getMethod("initResource", ResourceResolver.class);
-            final Object resource = initResource.invoke(requestData, stagingResourceResolver);
+    /**
+     * The method handles to replace the resolver of the Sling engines request implementation; the implementation
+     * classes are not accessible for the filter, so the handles are resolved for the class of the first request.
+     */
+    protected static class ResolverSwitch {
 
-            // if we try to cache this method object, we had to synchronize it - so leave it for now
+        protected final Class<?> requestClass;
+        protected final MethodHandle getRequestData;
+        protected final MethodHandle initResource;
+        protected final MethodHandle initServlet;
+
+        protected ResolverSwitch(SlingHttpServletRequest slingRequestImpl) throws ReflectiveOperationException {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            requestClass = slingRequestImpl.getClass();
+            // org.apache.sling.engine.impl.SlingHttpServletRequestImpl.getRequestData()
+            getRequestData = lookup.unreflect(requestClass.getMethod("getRequestData"));
+            Class<?> requestDataClass = getRequestData.invoke(slingRequestImpl).getClass();
+            // org.apache.sling.engine.impl.request.RequestData.initResource(ResourceResolver resourceResolver)
+            initResource = lookup.unreflect(requestDataClass.getMethod("initResource", ResourceResolver.class));
             // org.apache.sling.engine.impl.request.RequestData.initServlet(Resource resource, ServletResolver sr)
-            final Method initServlet = requestData.getClass()
-                    .getMethod("initServlet", Resource.class, ServletResolver.class);
+            initServlet = lookup.unreflect(requestDataClass.getMethod("initServlet", Resource.class, ServletResolver.class));
+        }
+
+        protected void switchResolver(SlingHttpServletRequest slingRequestImpl, ResourceResolver resolver,
+                                      ServletResolver servletResolver) throws Throwable {
+            Object requestData = getRequestData.invoke(slingRequestImpl);
+            Object resource = initResource.invoke(requestData, resolver);
             initServlet.invoke(requestData, resource, servletResolver);
-        } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
-            LOGGER.error("can not change ResourceResolver: ", e);
-            throw new ServletException("Error switching ResourceResolver");
         }
     }
 
@@ -241,6 +294,7 @@ public class ResourceResolverChangeFilter implements Filter, ReleaseMapper {
         for (String rule : configuration.pages_release_path_deny()) {
             if (StringUtils.isNotBlank(rule = rule.trim())) denyPathPatterns.add(Pattern.compile(rule));
         }
+        releaseRoots = new LruCache<>(configuration.release_root_cache_size());
         enabled = configuration.staging_resolver_enabled();
         LOGGER.info("enabled: " + enabled);
     }
@@ -275,5 +329,8 @@ public class ResourceResolverChangeFilter implements Filter, ReleaseMapper {
         String[] pages_release_path_deny() default {"^/(apps|libs|etc|var)/.*$",
                 "^/(bin/cpm|servlet|system)/.*$"};
 
+        @AttributeDefinition(name = "Release root cache size", description = "The number of requested paths for which the release root is remembered; 0 disables the cache.")
+        int release_root_cache_size() default 1000;
+
     }
 }
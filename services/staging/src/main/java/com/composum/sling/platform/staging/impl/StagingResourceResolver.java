@@ -1,8 +1,8 @@
 package com.composum.sling.platform.staging.impl;
 
+import com.composum.platform.commons.util.LruCache;
 import com.composum.sling.core.ResourceHandle;
 import com.composum.sling.core.util.ResourceUtil;
-import com.composum.sling.core.util.SlingResourceUtil;
 import com.composum.sling.platform.staging.Release;
 import com.composum.sling.platform.staging.ReleaseMapper;
 import com.composum.sling.platform.staging.StagingConstants;
@@ -10,6 +10,8 @@ import com.composum.sling.platform.staging.StagingReleaseManager;
 import com.composum.sling.platform.staging.impl.DefaultStagingReleaseManager.ReleaseImpl;
 import com.composum.sling.platform.staging.query.QueryBuilder;
 import com.composum.sling.platform.staging.query.impl.QueryBuilderImpl;
+import org.apache.commons.collections4.IteratorUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.jackrabbit.JcrConstants;
@@ -18,12 +20,14 @@ import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.NonExistingResource;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import javax.jcr.RepositoryException;
+import javax.jcr.Session;
 import javax.servlet.http.HttpServletRequest;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -54,6 +58,39 @@ public class StagingResourceResolver extends AbstractStagingResourceResolver imp
     @NotNull
     protected final DefaultStagingReleaseManager.Configuration configuration;
 
+    /**
+     * Caches the underlying resources (workspace copy or frozen nodes) for normalized release mapped paths; an empty
+     * value marks a path which doesn't exist in the release. Valid only for {@link #cachedChangeNumber}.
+     */
+    protected final LruCache<String, Optional<Resource>> resolvedPaths;
+
+    /** Caches the frozen nodes for the version uuids of version references; an empty value marks a missing version. */
+    protected final LruCache<String, Optional<Resource>> frozenNodes;
+
+    /** The {@link Release#getChangeNumber()} the entries of {@link #resolvedPaths} belong to. */
+    protected String cachedChangeNumber;
+
+    /** Provides the shared index of the release, if available. */
+    @Nullable
+    protected final DefaultStagingReleaseManager releaseManager;
+
+    /** The index for the {@link #cachedChangeNumber}; retrieved lazily. */
+    @Nullable
+    protected ReleasePathIndex pathIndex;
+
+    /** The compiled {@link DefaultStagingReleaseManager.Configuration#overlayed_nodes()}. */
+    @NotNull
+    protected final PathSegmentTrie overlayedNodes;
+
+    /** The compiled {@link DefaultStagingReleaseManager.Configuration#removed_paths()}. */
+    @NotNull
+    protected final PathSegmentTrie removedPaths;
+
+    /** Remembers the last path checked, since it's usually checked several times in a row. */
+    protected String lastCheckedPath;
+    protected boolean lastDirectlyMapped;
+    protected boolean lastFiltered;
+
     /**
      * Instantiates a new Staging resource resolver.
      *
@@ -61,13 +98,21 @@ public class StagingResourceResolver extends AbstractStagingResourceResolver imp
      * @param underlyingResolver   the resolver used to access resources outside of the version space
      * @param releaseMapper        the release mapper that determines which resources are release-mapped
      * @param configuration        the configuration
+     * @param releaseManager       if given, the shared {@link ReleasePathIndex} of the release is used
      * @param closeResolverOnClose if true, the underlyingResolver is closed when this resolver is closed
      */
-    protected StagingResourceResolver(@NotNull Release release, @NotNull ResourceResolver underlyingResolver, @NotNull ReleaseMapper releaseMapper, @NotNull DefaultStagingReleaseManager.Configuration configuration, boolean closeResolverOnClose) {
+    protected StagingResourceResolver(@NotNull Release release, @NotNull ResourceResolver underlyingResolver, @NotNull ReleaseMapper releaseMapper, @NotNull DefaultStagingReleaseManager.Configuration configuration, @Nullable DefaultStagingReleaseManager releaseManager, boolean closeResolverOnClose) {
         super(underlyingResolver, closeResolverOnClose);
         this.release = release;
         this.releaseMapper = releaseMapper;
         this.configuration = configuration;
+        this.releaseManager = releaseManager;
+        this.overlayedNodes = releaseManager != null ? releaseManager.getOverlayedNodes()
+                : new PathSegmentTrie(configuration.overlayed_nodes());
+        this.removedPaths = releaseManager != null ? releaseManager.getRemovedPaths()
+                : new PathSegmentTrie(configuration.removed_paths());
+        this.resolvedPaths = new LruCache<>(configuration.resolver_cache_size());
+        this.frozenNodes = new LruCache<>(configuration.resolver_cache_size());
     }
 
     /**
@@ -97,26 +142,27 @@ public class StagingResourceResolver extends AbstractStagingResourceResolver imp
 
     /** Checks whether the path is one of the special paths that are overlayed from the workspace. */
     public boolean isDirectlyMappedPath(String path) {
-        String rootPath = release.getReleaseRoot().getPath();
-        if (release.appliesToPath(path)) {
-            for (String node : configuration.overlayed_nodes()) {
-                if (SlingResourceUtil.isSameOrDescendant(rootPath + '/' + node, path))
-                    return true;
-            }
-        }
-        return false;
+        checkPath(path);
+        return lastDirectlyMapped;
     }
 
     /** Checks whether the path is a special paths that is removed by the resolver. */
     protected boolean isFilteredPath(String path) {
-        String rootPath = release.getReleaseRoot().getPath();
-        if (release.appliesToPath(path)) {
-            for (String removedPath : configuration.removed_paths()) {
-                if (SlingResourceUtil.isSameOrDescendant(rootPath + '/' + removedPath, path))
-                    return true;
-            }
+        checkPath(path);
+        return lastFiltered;
+    }
+
+    /** Evaluates {@link #isDirectlyMappedPath(String)} and {@link #isFilteredPath(String)} for a path once. */
+    protected void checkPath(String path) {
+        if (path != null && !path.equals(lastCheckedPath)) {
+            String rootPath = release.getReleaseRoot().getPath();
+            lastDirectlyMapped = overlayedNodes.isSameOrDescendant(rootPath, path);
+            lastFiltered = removedPaths.isSameOrDescendant(rootPath, path);
+            lastCheckedPath = path;
+        } else if (path == null) {
+            lastDirectlyMapped = lastFiltered = false;
+            lastCheckedPath = null;
         }
-        return false;
     }
 
     @Override
@@ -163,29 +209,167 @@ public class StagingResourceResolver extends AbstractStagingResourceResolver imp
         }
 
         Resource underlyingResource = ReleaseImpl.unwrap(release).getWorkspaceCopyNode();
-        if (!release.getReleaseRoot().getPath().equals(path)) {
-            if (!path.startsWith(release.getReleaseRoot().getPath() + '/')) // safety check - can't happen.
-                throw new IllegalArgumentException("Bug. " + path + " vs. " + release.getReleaseRoot().getPath());
-            String relPath = path.substring(release.getReleaseRoot().getPath().length() + 1);
-            String[] levels = relPath.split("/");
-            for (String level : levels) {
-                if (underlyingResource == null) return new NonExistingResource(this, path);
-                String actualname = StagingUtils.isInStorage(underlyingResource) ?
-                        REAL_PROPNAMES_TO_FROZEN_NAMES.getOrDefault(level, level) // mapping for property resources
-                        : level;
-                underlyingResource = underlyingResource.getChild(actualname);
-                underlyingResource = stepResource(underlyingResource);
+        String rootPath = release.getReleaseRoot().getPath();
+        if (!rootPath.equals(path)) {
+            if (!path.startsWith(rootPath + '/')) // safety check - can't happen.
+                throw new IllegalArgumentException("Bug. " + path + " vs. " + rootPath);
+            boolean useCache = validateCache();
+            // start the walk at the nearest ancestor that was already resolved
+            String resolvedPath = path;
+            Optional<Resource> cached = useCache ? resolvedPaths.get(resolvedPath) : null;
+            while (cached == null && useCache && resolvedPath.length() > rootPath.length()) {
+                resolvedPath = ResourceUtil.getParent(resolvedPath);
+                cached = rootPath.equals(resolvedPath) ? null : resolvedPaths.get(resolvedPath);
+            }
+            if (cached != null) {
+                underlyingResource = cached.orElse(null);
+            } else {
+                resolvedPath = rootPath;
+                ReleasePathIndex index = useCache ? getPathIndex() : null;
+                ReleasePathIndex.Location location = index != null ?
+                        index.locate(path.substring(rootPath.length() + 1)) : null;
+                if (location != null) { // jump directly to the frozen node of the versionable containing the path
+                    resolvedPath = rootPath + '/' + location.getVersionablePath();
+                    underlyingResource = location.getFrozenNodePath() != null ?
+                            underlyingResolver.getResource(location.getFrozenNodePath()) : null;
+                    resolvedPaths.put(resolvedPath, Optional.ofNullable(underlyingResource));
+                }
             }
+            if (resolvedPath.length() < path.length()) {
+                String[] levels = path.substring(resolvedPath.length() + 1).split("/");
+                for (String level : levels) {
+                    if (underlyingResource == null) break;
+                    String actualname = StagingUtils.isInStorage(underlyingResource) ?
+                            REAL_PROPNAMES_TO_FROZEN_NAMES.getOrDefault(level, level) // mapping for property resources
+                            : level;
+                    underlyingResource = underlyingResource.getChild(actualname);
+                    underlyingResource = stepResource(underlyingResource);
+                    resolvedPath = resolvedPath + '/' + level;
+                    if (useCache) {
+                        resolvedPaths.put(resolvedPath, Optional.ofNullable(underlyingResource));
+                    }
+                }
+            }
+            if (underlyingResource == null) return new NonExistingResource(this, path);
         }
         return wrapIntoStagingResource(path, underlyingResource, request, true);
     }
 
+    /**
+     * Drops the cached path resolutions if the release was changed since they were cached. The frozen nodes of
+     * the versions don't change, so these stay valid.
+     *
+     * @return false if the path cache must not be used since there are uncommitted changes which might modify the
+     * release content without changing its change number
+     */
+    protected boolean validateCache() {
+        if (underlyingResolver.hasChanges()) {
+            resolvedPaths.clear();
+            cachedChangeNumber = null;
+            pathIndex = null;
+            return false;
+        }
+        String changeNumber = release.getChangeNumber();
+        if (!StringUtils.equals(changeNumber, cachedChangeNumber)) {
+            resolvedPaths.clear();
+            pathIndex = null;
+            cachedChangeNumber = changeNumber;
+        }
+        return true;
+    }
+
+    /**
+     * The shared index of the release for its current state; not available if disabled or if there are uncommitted
+     * changes.
+     */
+    @Nullable
+    public ReleasePathIndex getReleasePathIndex() {
+        return validateCache() ? getPathIndex() : null;
+    }
+
+    /** The shared index of the release for the {@link #cachedChangeNumber}, if available. */
+    @Nullable
+    protected ReleasePathIndex getPathIndex() {
+        if (pathIndex == null && releaseManager != null && cachedChangeNumber != null) {
+            pathIndex = releaseManager.getReleasePathIndex(ReleaseImpl.unwrap(release), cachedChangeNumber);
+        }
+        return pathIndex;
+    }
+
+    /** Forgets all cached resolutions, too, since the underlying resolver might see different content now. */
+    @Override
+    public void refresh() {
+        resolvedPaths.clear();
+        frozenNodes.clear();
+        cachedChangeNumber = null;
+        pathIndex = null;
+        super.refresh();
+    }
+
+    /**
+     * For the nodes of the workspace copy of the release the versions of all version references are looked up at
+     * once before the children are stepped into version space. The lookups are kept only for this call, so that
+     * listing a large folder doesn't push everything else out of the caches.
+     */
+    @Override
+    @NotNull
+    protected Iterator<Resource> wrapChildren(@NotNull String parentPath, @NotNull Resource underlyingParent) {
+        if (StagingUtils.isInVersionStorage(underlyingParent) || !StagingUtils.isInStorage(underlyingParent)) {
+            return super.wrapChildren(parentPath, underlyingParent);
+        }
+        List<Resource> children = IteratorUtils.toList(underlyingParent.listChildren());
+        Map<String, Optional<Resource>> versions = resolveVersions(children);
+        List<Resource> result = new ArrayList<>(children.size());
+        for (Resource child : children) {
+            String path = parentPath + "/" + child.getName();
+            result.add(wrapIntoStagingResource(path, stepResource(child, versions), null, false));
+        }
+        return result.iterator();
+    }
+
+    /**
+     * Looks up the frozen nodes of all active version references in the resources which are not cached yet.
+     *
+     * @return the frozen nodes by version uuid; an empty value marks a missing version
+     */
+    @NotNull
+    protected Map<String, Optional<Resource>> resolveVersions(@NotNull List<Resource> resources) {
+        Map<String, Optional<Resource>> result = new HashMap<>();
+        Session session = underlyingResolver.adaptTo(Session.class);
+        if (session == null) {
+            return result; // leave that to stepResource
+        }
+        for (Resource resource : resources) {
+            ValueMap valueMap = resource.getValueMap();
+            String versionUuid = valueMap.get(StagingConstants.PROP_VERSION, String.class);
+            if (versionUuid != null && !valueMap.get(StagingConstants.PROP_DEACTIVATED, false)
+                    && !result.containsKey(versionUuid) && frozenNodes.get(versionUuid) == null
+                    && ResourceHandle.use(resource).isOfType(StagingConstants.TYPE_VERSIONREFERENCE)) {
+                try {
+                    String versionPath = session.getNodeByIdentifier(versionUuid).getPath();
+                    Resource frozenNode = underlyingResolver.getResource(versionPath + "/" + JcrConstants.JCR_FROZENNODE);
+                    result.put(versionUuid, Optional.ofNullable(frozenNode));
+                } catch (RepositoryException e) { // not found or not accessible - stepResource takes care of that
+                    LOG.debug("Version {} not accessible for {}: {}", versionUuid, resource.getPath(), e.toString());
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Checks whether the resource is exactly on one of the points where we move to a different resource:
      * the release root is actually mapped to the release content root, and a version reference mapped to version space.
      */
     @Override
     protected Resource stepResource(Resource resource) {
+        return stepResource(resource, null);
+    }
+
+    /**
+     * {@link #stepResource(Resource)} that takes the frozen nodes from the given versions, if they are in there.
+     */
+    protected Resource stepResource(Resource resource, @Nullable Map<String, Optional<Resource>> versions) {
         if (resource == null) {
             return null;
         } else if (resource.getPath().equals(release.getReleaseRoot().getPath())) {
@@ -195,17 +379,28 @@ public class StagingResourceResolver extends AbstractStagingResourceResolver imp
         } else if (ResourceHandle.use(resource).isOfType(StagingConstants.TYPE_VERSIONREFERENCE)) {
             Boolean deactivated = resource.getValueMap().get(StagingConstants.PROP_DEACTIVATED, false);
             if (deactivated) return null;
-            Resource underlyingResource = null;
-            try { // PROP_VERSION is mandatory and version access is needed - no need for checks.
-                Resource propertyResource = resource.getChild(StagingConstants.PROP_VERSION);
-                underlyingResource = ResourceUtil.getReferredResource(propertyResource);
-            } catch (RepositoryException | NullPointerException e) { // weird unexpected case
-                // Returning a NonExistingResource here is not good, but breaking everything seems worse.
-                LOG.error("Error finding version for " + resource.getPath(), e);
+            String versionUuid = resource.getValueMap().get(StagingConstants.PROP_VERSION, String.class);
+            Optional<Resource> frozenNode = versionUuid != null && versions != null ? versions.get(versionUuid) : null;
+            if (frozenNode == null && versionUuid != null) {
+                frozenNode = frozenNodes.get(versionUuid);
+            }
+            if (frozenNode == null) {
+                Resource underlyingResource = null;
+                try { // PROP_VERSION is mandatory and version access is needed - no need for checks.
+                    Resource propertyResource = resource.getChild(StagingConstants.PROP_VERSION);
+                    underlyingResource = ResourceUtil.getReferredResource(propertyResource);
+                } catch (RepositoryException | NullPointerException e) { // weird unexpected case
+                    // Returning a NonExistingResource here is not good, but breaking everything seems worse.
+                    LOG.error("Error finding version for " + resource.getPath(), e);
+                }
+                if (underlyingResource != null)
+                    underlyingResource = underlyingResource.getChild(JcrConstants.JCR_FROZENNODE);
+                frozenNode = Optional.ofNullable(underlyingResource);
+                if (versionUuid != null) {
+                    frozenNodes.put(versionUuid, frozenNode);
+                }
             }
-            if (underlyingResource != null)
-                underlyingResource = underlyingResource.getChild(JcrConstants.JCR_FROZENNODE);
-            return underlyingResource;
+            return frozenNode.orElse(null);
         } else if (resource.getValueMap().get(StagingConstants.PROP_DEACTIVATED, false)) {
             return null;
         }
@@ -231,7 +426,7 @@ public class StagingResourceResolver extends AbstractStagingResourceResolver imp
     @NotNull
     public ResourceResolver clone(@Nullable Map<String, Object> authenticationInfo) throws LoginException {
         ResourceResolver resolver = underlyingResolver.clone(authenticationInfo);
-        return new StagingResourceResolver(release, resolver, releaseMapper, configuration, true);
+        return new StagingResourceResolver(release, resolver, releaseMapper, configuration, releaseManager, true);
     }
     
     /**
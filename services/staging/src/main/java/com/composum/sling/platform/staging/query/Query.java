@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.concurrent.Executor;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -97,6 +98,17 @@ public abstract class Query {
     final protected List<JoinData> joins = new ArrayList<>();
     protected long limit = Long.MAX_VALUE;
     protected long offset = 0;
+    @CheckForNull
+    protected Executor parallelExecutor;
+    /** True if keyset paging is used - see {@link #startAfter(Object, String)}. */
+    protected boolean keysetPaging;
+    @CheckForNull
+    protected Object startAfterValue;
+    @CheckForNull
+    protected String startAfterPath;
+
+    /** Name of the binding variable for the ordering value of {@link #startAfter(Object, String)}. */
+    protected static final String BINDING_START_AFTER = "queryStartAfter";
 
     /**
      * Mandatory absolute path below which we query descendant resources.
@@ -280,6 +292,41 @@ public abstract class Query {
         return this;
     }
 
+    /**
+     * Optionally executes the separate queries needed for a query within a release (in version storage, in the
+     * workspace copy of the release and outside of it) concurrently, each with its own session, instead of one after
+     * the other. The results are merged as they are consumed.
+     * <p>
+     * Caution: the queries run with clones of the resolver of the release, so they see only the committed content -
+     * pending changes of the resolver are not taken into account. The background queries are abandoned and their
+     * sessions closed as soon as the results are iterated to the end, when the results are garbage collected, or
+     * if they are not consumed for a minute.
+     *
+     * @param executor a bounded executor to run the queries; if null the queries are executed sequentially
+     * @return this for chaining calls in builder-style
+     */
+    public Query parallel(@Nullable Executor executor) {
+        this.parallelExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Switches to keyset paging, which is an alternative to {@link #offset(long)} for paging through large results:
+     * the results are ordered by the {@link #orderBy(String)} attribute and then by path, and only the results after
+     * the given position (the ordering value and the path of the last result of the previous page) are returned.
+     * For the first page call this with a null path.
+     *
+     * @param orderByValue the value of the ordering attribute of the last result of the previous page
+     * @param path         the path of the last result of the previous page; null for the first page
+     * @return this for chaining calls in builder-style
+     */
+    public Query startAfter(@Nullable Object orderByValue, @Nullable String path) {
+        this.keysetPaging = true;
+        this.startAfterValue = path != null ? orderByValue : null;
+        this.startAfterPath = path;
+        return this;
+    }
+
     /**
      * Executes the query and returns the results as an {@link Iterable} of Resources.
      *
@@ -327,6 +374,22 @@ public abstract class Query {
      */
     protected void validate() {
         Validate.notNull(path, "path is required");
+        Validate.isTrue(!keysetPaging || !isBlank(orderBy), "keyset paging requires an ordering");
+    }
+
+    /**
+     * Restricts the query to results which can be after the {@link #startAfter(Object, String)} position; results
+     * with the same ordering value have to be filtered afterwards. Bound to {@link #BINDING_START_AFTER}.
+     */
+    @NotNull
+    protected String startAfterConstraint(QueryGenerationMode mode) {
+        if (!keysetPaging || startAfterPath == null || startAfterValue == null || COLUMN_PATH.equals(orderBy)) {
+            return "";
+        }
+        String attr = QueryGenerationMode.NORMAL == mode ? orderBy : StagingConstants.REAL_PROPNAMES_TO_FROZEN_NAMES.getOrDefault(orderBy, orderBy);
+        // null values are sorted before all other values
+        return ascending ? "AND n.[" + attr + "] >= $" + BINDING_START_AFTER + " \n"
+                : "AND (n.[" + attr + "] <= $" + BINDING_START_AFTER + " OR n.[" + attr + "] IS NULL) \n";
     }
 
     @NotNull
@@ -422,6 +485,8 @@ public abstract class Query {
         if (!joins.isEmpty()) toStringBuilder.append("joins", joins);
         if (limit != Long.MAX_VALUE) toStringBuilder.append("limit", limit);
         if (offset != 0) toStringBuilder.append("offset", offset);
+        if (keysetPaging) toStringBuilder.append("startAfter", startAfterValue + "," + startAfterPath);
+        if (parallelExecutor != null) toStringBuilder.append("parallel", true);
     }
 
     public enum JoinType {Inner, LeftOuter, RightOuter}
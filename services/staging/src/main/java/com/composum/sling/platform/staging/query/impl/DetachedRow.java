@@ -0,0 +1,196 @@
+package com.composum.sling.platform.staging.query.impl;
+
+import org.apache.jackrabbit.util.ISO8601;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.jcr.Binary;
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.UnsupportedRepositoryOperationException;
+import javax.jcr.Value;
+import javax.jcr.ValueFormatException;
+import javax.jcr.query.Row;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A copy of the column values of a query result {@link Row} which doesn't depend on the session the query was
+ * executed with, so that it can be handed over from the thread executing a query with its own session. Only the
+ * column values are available - {@link #getNode()} and the like are not supported.
+ */
+class DetachedRow implements Row {
+
+    protected final Map<String, Value> values;
+
+    /** Copies the values of the given columns of the row. */
+    DetachedRow(@NotNull String[] columnNames, @NotNull Row row) throws RepositoryException {
+        values = new LinkedHashMap<>();
+        for (String column : columnNames) {
+            Value value = row.getValue(column);
+            values.put(column, value != null ? new DetachedValue(value) : null);
+        }
+    }
+
+    @Override
+    public Value[] getValues() {
+        return values.values().toArray(new Value[0]);
+    }
+
+    @Override
+    public Value getValue(String columnName) throws RepositoryException {
+        if (!values.containsKey(columnName)) {
+            throw new ItemNotFoundException("No column " + columnName);
+        }
+        return values.get(columnName);
+    }
+
+    @Override
+    public Node getNode() throws RepositoryException {
+        throw new UnsupportedRepositoryOperationException("Detached row");
+    }
+
+    @Override
+    public Node getNode(String selectorName) throws RepositoryException {
+        throw new UnsupportedRepositoryOperationException("Detached row");
+    }
+
+    @Override
+    public String getPath() throws RepositoryException {
+        return getPath("n");
+    }
+
+    @Override
+    public String getPath(String selectorName) throws RepositoryException {
+        Value value = getValue(selectorName + ".jcr:path");
+        return value != null ? value.getString() : null;
+    }
+
+    @Override
+    public double getScore() throws RepositoryException {
+        return getScore("n");
+    }
+
+    @Override
+    public double getScore(String selectorName) throws RepositoryException {
+        Value value = values.get(selectorName + ".jcr:score");
+        return value != null ? value.getDouble() : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return "DetachedRow" + values;
+    }
+
+    /** A value that is kept as its type and string representation. */
+    protected static class DetachedValue implements Value {
+
+        protected final int type;
+        protected final String string;
+
+        protected DetachedValue(@NotNull Value value) throws RepositoryException {
+            this.type = value.getType();
+            this.string = value.getString();
+        }
+
+        @Override
+        public String getString() {
+            return string;
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public InputStream getStream() {
+            return new ByteArrayInputStream(string.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public Binary getBinary() throws RepositoryException {
+            throw new ValueFormatException("Binaries are not kept in detached rows");
+        }
+
+        @Override
+        public long getLong() throws RepositoryException {
+            if (type == PropertyType.DATE) {
+                return getDate().getTimeInMillis();
+            }
+            try {
+                return type == PropertyType.LONG ? Long.parseLong(string) : new BigDecimal(string).longValue();
+            } catch (NumberFormatException e) {
+                throw new ValueFormatException(e);
+            }
+        }
+
+        @Override
+        public double getDouble() throws RepositoryException {
+            if (type == PropertyType.DATE) {
+                return getDate().getTimeInMillis();
+            }
+            try {
+                return Double.parseDouble(string);
+            } catch (NumberFormatException e) {
+                throw new ValueFormatException(e);
+            }
+        }
+
+        @Override
+        public BigDecimal getDecimal() throws RepositoryException {
+            if (type == PropertyType.DATE) {
+                return BigDecimal.valueOf(getDate().getTimeInMillis());
+            }
+            try {
+                return new BigDecimal(string);
+            } catch (NumberFormatException e) {
+                throw new ValueFormatException(e);
+            }
+        }
+
+        @Override
+        @Nullable
+        public Calendar getDate() throws RepositoryException {
+            if (type == PropertyType.LONG || type == PropertyType.DOUBLE || type == PropertyType.DECIMAL) {
+                Calendar calendar = Calendar.getInstance();
+                calendar.setTimeInMillis(getDecimal().longValue());
+                return calendar;
+            }
+            Calendar calendar = ISO8601.parse(string);
+            if (calendar == null) {
+                throw new ValueFormatException("Not a date: " + string);
+            }
+            return calendar;
+        }
+
+        @Override
+        public boolean getBoolean() {
+            return Boolean.parseBoolean(string);
+        }
+
+        @Override
+        public int getType() {
+            return type;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof DetachedValue && type == ((DetachedValue) other).type
+                    && string.equals(((DetachedValue) other).string);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type + string.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return string;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.composum.sling.platform.staging.query.impl;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.jcr.RepositoryException;
+import javax.jcr.nodetype.NodeType;
+import javax.jcr.nodetype.NodeTypeIterator;
+import javax.jcr.nodetype.NodeTypeManager;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches for node types the names of all node types which are of that type (the type itself and its subtypes), so
+ * that type constraints of queries can be put into the query statement for the frozen types in the version storage.
+ * Shared between queries; since node types are rarely registered, the cache is just dropped after
+ * {@link #MAX_AGE_MS}.
+ */
+@ThreadSafe
+class NodeTypeHierarchyCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NodeTypeHierarchyCache.class);
+
+    protected static final long MAX_AGE_MS = TimeUnit.MINUTES.toMillis(5);
+
+    protected final Map<String, Set<String>> typesOf = new ConcurrentHashMap<>();
+
+    protected volatile long created = System.currentTimeMillis();
+
+    /**
+     * The names of the node types which are of the given type.
+     *
+     * @return an unmodifiable sorted set containing at least the type itself
+     */
+    @NotNull
+    public Set<String> getTypesOf(@NotNull NodeTypeManager nodeTypeManager, @NotNull String typeName)
+            throws RepositoryException {
+        if (System.currentTimeMillis() - created > MAX_AGE_MS) {
+            typesOf.clear();
+            created = System.currentTimeMillis();
+        }
+        Set<String> result = typesOf.get(typeName);
+        if (result == null) {
+            Set<String> types = new TreeSet<>();
+            types.add(typeName);
+            for (NodeTypeIterator it = nodeTypeManager.getAllNodeTypes(); it.hasNext(); ) {
+                NodeType nodeType = it.nextNodeType();
+                if (nodeType.isNodeType(typeName)) {
+                    types.add(nodeType.getName());
+                }
+            }
+            result = Collections.unmodifiableSet(types);
+            typesOf.put(typeName, result);
+            LOG.debug("Types of {}: {}", typeName, result);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,270 @@
+package com.composum.sling.platform.staging.query.impl;
+
+import org.apache.sling.api.SlingException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+import java.io.Closeable;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Executes a query in the background with a clone of a resolver and streams the results as {@link DetachedRow}s
+ * through a bounded queue, so that several queries can run concurrently while their results are merged. The clone
+ * sees only committed content. The execution is abandoned and the clone closed when the iterator is
+ * {@link #close() closed}, when it is garbage collected, or if the results aren't consumed for {@link #TIMEOUT_SECONDS}.
+ */
+class ParallelQueryIterator implements Iterator<Row>, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelQueryIterator.class);
+
+    /** The number of rows read ahead. */
+    protected static final int QUEUE_SIZE = 100;
+
+    protected static final long TIMEOUT_SECONDS = 60;
+
+    /** How often the producer checks whether the iterator was closed or discarded while the queue is full. */
+    protected static final long CHECK_MILLIS = 500;
+
+    /** Creates the query result with the given resolver, which is a clone used only by this query. */
+    @FunctionalInterface
+    interface QueryExecution {
+        @NotNull
+        QueryResult execute(@NotNull ResourceResolver resolver) throws Exception;
+    }
+
+    /** Marks the end of the results. */
+    protected static final Object END = new Object();
+
+    protected final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+
+    protected final String description;
+
+    protected final Producer producer;
+
+    protected Object next;
+
+    /**
+     * Starts the query.
+     *
+     * @param executor     the executor running the query
+     * @param baseResolver the resolver cloned for the query
+     * @param maxRows      the maximum number of rows needed
+     * @param execution    creates the query result
+     * @param description  for logging
+     */
+    ParallelQueryIterator(@NotNull Executor executor, @NotNull ResourceResolver baseResolver, long maxRows,
+                          @NotNull QueryExecution execution, @NotNull String description) {
+        this.description = description;
+        ResourceResolver resolver;
+        try {
+            resolver = baseResolver.clone(null);
+        } catch (Exception e) {
+            throw new SlingException("Could not clone resolver for " + description, e);
+        }
+        producer = new Producer(this, resolver, maxRows, execution);
+        try {
+            executor.execute(producer);
+        } catch (RejectedExecutionException e) {
+            producer.cancel();
+            throw new SlingException("Could not start " + description, e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = queue.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new SlingException("Interrupted waiting for " + description, e);
+            }
+            if (next == null) {
+                close();
+                throw new SlingException("Timeout waiting for " + description, null);
+            }
+            if (next instanceof SlingException) { // e.g. a QuerySyntaxException
+                SlingException exception = (SlingException) next;
+                close();
+                throw exception;
+            }
+            if (next instanceof Exception) {
+                Exception exception = (Exception) next;
+                close();
+                throw new SlingException("Error executing " + description, exception);
+            }
+            if (next == END) {
+                close();
+            }
+        }
+        return next != END;
+    }
+
+    @Override
+    public Row next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Row row = (Row) next;
+        next = null;
+        return row;
+    }
+
+    /** Abandons the query if it is still running and frees the rows read ahead. Can be called repeatedly. */
+    @Override
+    public void close() {
+        next = END;
+        producer.cancel();
+        queue.clear();
+    }
+
+    /**
+     * Closes the given parallel iterators when the iteration over the rows merged from them ends, even if that is
+     * due to an exception or a limit.
+     */
+    @NotNull
+    static Iterator<Row> closingAtEnd(@NotNull Iterator<Row> rows, @NotNull List<ParallelQueryIterator> parallelIterators) {
+        return new ClosingIterator(rows, parallelIterators);
+    }
+
+    /**
+     * Runs the query and transfers the rows into the queue. It references the iterator only weakly, so that it can
+     * notice if the iterator was discarded without being consumed to the end.
+     */
+    protected static class Producer implements Runnable {
+
+        protected final WeakReference<ParallelQueryIterator> consumer;
+        protected final BlockingQueue<Object> queue;
+        protected final String description;
+        protected final ResourceResolver resolver;
+        protected final long maxRows;
+        protected final QueryExecution execution;
+
+        /** Set by whoever takes over closing the resolver - the producer run or a cancel before that. */
+        protected final AtomicBoolean started = new AtomicBoolean();
+
+        protected volatile boolean cancelled;
+
+        protected Producer(ParallelQueryIterator consumer, ResourceResolver resolver, long maxRows,
+                           QueryExecution execution) {
+            this.consumer = new WeakReference<>(consumer);
+            this.queue = consumer.queue;
+            this.description = consumer.description;
+            this.resolver = resolver;
+            this.maxRows = maxRows;
+            this.execution = execution;
+        }
+
+        protected void cancel() {
+            cancelled = true;
+            if (started.compareAndSet(false, true)) { // never ran, so nobody else closes it
+                resolver.close();
+            }
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return; // cancelled before it ran
+            }
+            Object last = END;
+            try {
+                QueryResult result = execution.execute(resolver);
+                String[] columnNames = result.getColumnNames();
+                RowIterator rows = result.getRows();
+                for (long count = 0; count < maxRows && rows.hasNext(); count++) {
+                    if (!offer(new DetachedRow(columnNames, rows.nextRow()))) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                last = e;
+            } catch (Exception e) {
+                last = e;
+            } finally {
+                resolver.close();
+                try {
+                    if (!cancelled && !offer(last)) {
+                        LOG.debug("End not consumed for {}", description);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        /** Waits until there is room in the queue, as long as the iterator is still in use. */
+        protected boolean offer(Object item) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            while (!cancelled && consumer.get() != null) {
+                if (queue.offer(item, CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+                if (System.nanoTime() - deadline > 0) {
+                    LOG.warn("Results not consumed - abandoning {}", description);
+                    return false;
+                }
+            }
+            LOG.debug("Iterator closed or discarded - abandoning {}", description);
+            return false;
+        }
+    }
+
+    /** Closes the parallel iterators when the iteration over the merged rows ends. */
+    protected static class ClosingIterator implements Iterator<Row>, Closeable {
+
+        protected final Iterator<Row> rows;
+        protected final List<ParallelQueryIterator> parallelIterators;
+
+        protected ClosingIterator(Iterator<Row> rows, List<ParallelQueryIterator> parallelIterators) {
+            this.rows = rows;
+            this.parallelIterators = parallelIterators;
+        }
+
+        @Override
+        public boolean hasNext() {
+            boolean hasNext;
+            try {
+                hasNext = rows.hasNext();
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+            if (!hasNext) {
+                close();
+            }
+            return hasNext;
+        }
+
+        @Override
+        public Row next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return rows.next();
+        }
+
+        @Override
+        public void close() {
+            for (ParallelQueryIterator parallelIterator : parallelIterators) {
+                parallelIterator.close();
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ import com.composum.sling.core.util.ResourceUtil;
 import com.composum.sling.platform.staging.ReleaseMapper;
 import com.composum.sling.platform.staging.StagingConstants;
 import com.composum.sling.platform.staging.impl.DefaultStagingReleaseManager;
+import com.composum.sling.platform.staging.impl.ReleasePathIndex;
 import com.composum.sling.platform.staging.impl.StagingResourceResolver;
 import com.composum.sling.platform.staging.impl.StagingUtils;
 import com.composum.sling.platform.staging.query.Query;
@@ -25,21 +26,28 @@ import org.apache.sling.api.resource.ResourceResolver;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.Value;
-import javax.jcr.nodetype.NodeType;
+import javax.jcr.ValueFactory;
 import javax.jcr.nodetype.NodeTypeManager;
 import javax.jcr.query.InvalidQueryException;
 import javax.jcr.query.QueryManager;
 import javax.jcr.query.QueryResult;
 import javax.jcr.query.Row;
 import javax.jcr.query.RowIterator;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.Objects;
 
 import static com.composum.sling.core.util.SlingResourceUtil.isSameOrDescendant;
@@ -73,24 +81,29 @@ public class StagingQueryImpl extends Query {
     @NotNull
     protected final ResourceResolver resourceResolver;
 
-    /** Caches whether a type matches the requested type constraint. */
-    protected final Map<String, Boolean> matchesTypeConstraintCache = new HashMap<>();
+    /** The types and their subtypes, shared between queries. */
+    protected static final NodeTypeHierarchyCache NODE_TYPE_HIERARCHY = new NodeTypeHierarchyCache();
 
     /** Lazily initialized - use only {@link #giveVersionUuidToVersionReferenceUuidMap()}. */
     private HashMap<String, String> versionUuidToVersionReferencePathMap;
 
+    /**
+     * The shared index of the release, if available and built for the user of our resolver - then we don't need the
+     * {@link #versionUuidToVersionReferencePathMap}.
+     */
+    @Nullable
+    protected final ReleasePathIndex releasePathIndex;
+
     // We use {@link StagingResourceResolver#adaptTo(Class)} to find out whether we have a StagingResourceResolver, since it might be wrapped.
     protected StagingQueryImpl(ResourceResolver resourceResolver) {
         this.resourceResolver = resourceResolver;
         StagingResourceResolver stagingResolver = resourceResolver.adaptTo(StagingResourceResolver.class);
         this.release = null != stagingResolver ? DefaultStagingReleaseManager.ReleaseImpl.unwrap(stagingResolver.getRelease()) : null;
         this.releaseMapper = null != stagingResolver ? stagingResolver.getReleaseMapper() : ReleaseMapper.ALLPERMISSIVE;
-    }
-
-    @Override
-    public Query type(String type) {
-        matchesTypeConstraintCache.clear();
-        return super.type(type);
+        ReleasePathIndex index = null != stagingResolver ? stagingResolver.getReleasePathIndex() : null;
+        // the index contains only what the user who built it can read - we must not reveal more than our session sees
+        this.releasePathIndex = index != null && Objects.equals(index.getUserId(), resourceResolver.getUserID())
+                ? index : null;
     }
 
     protected String getPath() {
@@ -141,7 +154,8 @@ public class StagingQueryImpl extends Query {
                 || !withinRelease && !releaseIsWithinPath) {
             String statement = buildSQL2(NORMAL);
             LOG.debug("JCR-SQL2 not versioncontrolled:\n{}", statement);
-            return executeNotReleasecontrolledQuery(queryManager, statement);
+            Iterator<Row> rows = executeNotReleasecontrolledQuery(queryManager, statement);
+            return keysetPaging ? ensureLimitAndOffset(applyKeyset(rows)) : rows;
         }
         // OK - we are within a release and some of the descendants of path would be mapped to a release
 
@@ -171,7 +185,8 @@ public class StagingQueryImpl extends Query {
                 String statement = buildSQL24SingleVersion(frozenNode.getPath());
                 LOG.debug("JCR-SQL2 single version:\n{}", statement);
                 Iterator<Row> rowsFromVersionStorage = executeNotReleasecontrolledQuery(queryManager, statement);
-                return filterFromVersionStorage(rowsFromVersionStorage);
+                rowsFromVersionStorage = filterFromVersionStorage(rowsFromVersionStorage);
+                return keysetPaging ? ensureLimitAndOffset(applyKeyset(rowsFromVersionStorage)) : rowsFromVersionStorage;
             }
         }
 
@@ -180,48 +195,84 @@ public class StagingQueryImpl extends Query {
         // - within the release content copy
         // - outside bot
 
-        Iterator<Row> rowsFromVersionStorage;
         String versionStorageStatement = buildSQL2Version();
-        try {
-            LOG.debug("JCR-SQL2 versioned:\n{}", versionStorageStatement);
-            javax.jcr.query.Query versionedQuery = initJcrQuery(queryManager, versionStorageStatement);
-            if (0 <= limit && Long.MAX_VALUE != limit) versionedQuery.setLimit(offset + limit);
-            rowsFromVersionStorage = versionedQuery.execute().getRows();
-            rowsFromVersionStorage = filterFromVersionStorage(rowsFromVersionStorage);
-        } catch (InvalidQueryException e) {
-            throw new QuerySyntaxException(e.getMessage(), versionStorageStatement, JCR_SQL2, e);
-        }
+        LOG.debug("JCR-SQL2 versioned:\n{}", versionStorageStatement);
+        String releaseTreeStatement = buildSQL2(WORKSPACECOPY);
+        LOG.debug("JCR-SQL2 workspace copy:\n{}", releaseTreeStatement);
+        String outsideStatement = buildSQL2(NORMAL);
+        LOG.debug("JCR-SQL2 unversioned:\n{}", outsideStatement);
 
+        Iterator<Row> rowsFromVersionStorage;
         Iterator<Row> rowsInsideReleasetree;
-        String releaseTreeStatement = buildSQL2(WORKSPACECOPY);
-        try {
-            LOG.debug("JCR-SQL2 workspace copy:\n{}", releaseTreeStatement);
-            javax.jcr.query.Query unversionedQuery = initJcrQuery(queryManager, releaseTreeStatement);
-            if (0 <= limit && Long.MAX_VALUE != limit) unversionedQuery.setLimit(offset + limit);
-            rowsInsideReleasetree = unversionedQuery.execute().getRows();
-            rowsInsideReleasetree = filterReleaseWorkspaceCopy(rowsInsideReleasetree);
-        } catch (InvalidQueryException e) {
-            throw new QuerySyntaxException(e.getMessage(), releaseTreeStatement, JCR_SQL2, e);
+        Iterator<Row> rowsOutside;
+        List<ParallelQueryIterator> parallelIterators = new ArrayList<>();
+        if (parallelExecutor != null) {
+            try {
+                rowsFromVersionStorage = executeParallel(underlyingResolver, versionStorageStatement, parallelIterators);
+                rowsInsideReleasetree = executeParallel(underlyingResolver, releaseTreeStatement, parallelIterators);
+                rowsOutside = executeParallel(underlyingResolver, outsideStatement, parallelIterators);
+            } catch (RuntimeException e) {
+                parallelIterators.forEach(ParallelQueryIterator::close);
+                throw e;
+            }
+        } else {
+            rowsFromVersionStorage = executeSubquery(queryManager, versionStorageStatement);
+            rowsInsideReleasetree = executeSubquery(queryManager, releaseTreeStatement);
+            rowsOutside = executeSubquery(queryManager, outsideStatement);
         }
+        rowsFromVersionStorage = filterFromVersionStorage(rowsFromVersionStorage);
+        rowsInsideReleasetree = filterReleaseWorkspaceCopy(rowsInsideReleasetree);
+        rowsOutside = filterUnmapped(rowsOutside);
 
         Iterator<Row> rows = mergeResults(rowsFromVersionStorage, rowsInsideReleasetree);
+        rows = mergeResults(rows, rowsOutside);
 
-        String outsideStatement = buildSQL2(NORMAL);
-        Iterator<Row> rowsOutside;
+        if (keysetPaging) rows = applyKeyset(rows);
+        rows = ensureLimitAndOffset(rows);
+        if (!parallelIterators.isEmpty()) rows = ParallelQueryIterator.closingAtEnd(rows, parallelIterators);
+        return rows;
+    }
+
+    /**
+     * The number of rows needed from each of the queries for a release. With keyset paging the rows with the same
+     * ordering value as the start position are filtered afterwards, so we cannot limit these.
+     */
+    protected long subqueryLimit() {
+        return 0 <= limit && Long.MAX_VALUE != limit && !keysetPaging ? offset + limit : Long.MAX_VALUE;
+    }
+
+    /** Executes one of the queries for a release. */
+    protected Iterator<Row> executeSubquery(QueryManager queryManager, String statement)
+            throws RepositoryException, QuerySyntaxException {
         try {
-            LOG.debug("JCR-SQL2 unversioned:\n{}", outsideStatement);
-            javax.jcr.query.Query unversionedQuery = initJcrQuery(queryManager, outsideStatement);
-            if (0 <= limit && Long.MAX_VALUE != limit) unversionedQuery.setLimit(offset + limit);
-            rowsOutside = unversionedQuery.execute().getRows();
-            rowsOutside = filterUnmapped(rowsOutside);
+            javax.jcr.query.Query query = initJcrQuery(queryManager, statement);
+            if (Long.MAX_VALUE != subqueryLimit()) query.setLimit(subqueryLimit());
+            return query.execute().getRows();
         } catch (InvalidQueryException e) {
-            throw new QuerySyntaxException(e.getMessage(), outsideStatement, JCR_SQL2, e);
+            throw new QuerySyntaxException(e.getMessage(), statement, JCR_SQL2, e);
         }
+    }
 
-        rows = mergeResults(rows, rowsOutside);
-
-        rows = ensureLimitAndOffset(rows);
-        return rows;
+    /**
+     * Starts one of the queries for a release in the background with a clone of the underlying resolver of the
+     * release; the rows are transferred as they are consumed. The iterator is added to parallelIterators to be closed
+     * when the iteration ends.
+     */
+    protected Iterator<Row> executeParallel(ResourceResolver underlyingResolver, String statement,
+                                            List<ParallelQueryIterator> parallelIterators) {
+        long subqueryLimit = subqueryLimit();
+        ParallelQueryIterator iterator = new ParallelQueryIterator(parallelExecutor, underlyingResolver, subqueryLimit, (resolver) -> {
+            try {
+                QueryManager queryManager = resolver.adaptTo(Session.class).getWorkspace().getQueryManager();
+                javax.jcr.query.Query query = initJcrQuery(queryManager, statement, resolver);
+                if (Long.MAX_VALUE != subqueryLimit) query.setLimit(subqueryLimit);
+                return query.execute();
+            } catch (InvalidQueryException e) {
+                throw new QuerySyntaxException(e.getMessage(), statement, JCR_SQL2, e);
+            }
+        }, statement);
+        parallelIterators.add(iterator);
+        return iterator;
     }
 
     @NotNull
@@ -236,8 +287,10 @@ public class StagingQueryImpl extends Query {
     protected Iterator<Row> executeNotReleasecontrolledQuery(QueryManager queryManager, String statement) throws RepositoryException, QuerySyntaxException {
         try {
             javax.jcr.query.Query query = initJcrQuery(queryManager, statement);
-            query.setOffset(offset);
-            if (0 < limit && Long.MAX_VALUE != limit) query.setLimit(limit);
+            if (!keysetPaging) { // otherwise the limits are applied after the keyset filter
+                query.setOffset(offset);
+                if (0 < limit && Long.MAX_VALUE != limit) query.setLimit(limit);
+            }
             QueryResult queryResult = query.execute();
             return queryResult.getRows();
         } catch (InvalidQueryException e) {
@@ -255,14 +308,147 @@ public class StagingQueryImpl extends Query {
 
     protected javax.jcr.query.Query initJcrQuery(QueryManager queryManager, String statement)
             throws RepositoryException {
+        return initJcrQuery(queryManager, statement, resourceResolver);
+    }
+
+    /** Creates the query and binds the values with the given resolver, which belongs to the query manager. */
+    protected javax.jcr.query.Query initJcrQuery(QueryManager queryManager, String statement,
+                                                 ResourceResolver bindingResolver)
+            throws RepositoryException {
         javax.jcr.query.Query query = queryManager.createQuery(statement, JCR_SQL2);
         if (null != queryCondition)
-            queryCondition.applyBindingValues(query, resourceResolver);
+            queryCondition.applyBindingValues(query, bindingResolver);
         for (JoinData join : joins)
-            join.joinSelectCondition.applyBindingValues(query, resourceResolver);
+            join.joinSelectCondition.applyBindingValues(query, bindingResolver);
+        if (!startAfterConstraint(NORMAL).isEmpty())
+            query.bindValue(BINDING_START_AFTER,
+                    createValue(bindingResolver.adaptTo(Session.class).getValueFactory(), startAfterValue));
         return query;
     }
 
+    /** Converts the value like the binding values of the {@link com.composum.sling.platform.staging.query.QueryConditionDsl}. */
+    protected Value createValue(ValueFactory valueFactory, Object value) {
+        if (value instanceof Value) return (Value) value;
+        if (value instanceof Calendar) return valueFactory.createValue((Calendar) value);
+        if (value instanceof Boolean) return valueFactory.createValue((Boolean) value);
+        if (value instanceof BigDecimal) return valueFactory.createValue((BigDecimal) value);
+        if (value instanceof Byte || value instanceof Short || value instanceof Integer || value instanceof Long)
+            return valueFactory.createValue(((Number) value).longValue());
+        if (value instanceof Number) return valueFactory.createValue(((Number) value).doubleValue());
+        return valueFactory.createValue(String.valueOf(value));
+    }
+
+    /**
+     * Keyset paging: sorts the rows with the same ordering value by path and drops all rows up to and including the
+     * {@link #startAfter(Object, String)} position. The queries already skip the rows before the ordering value.
+     */
+    protected Iterator<Row> applyKeyset(Iterator<Row> rows) {
+        Comparator<String> pathOrder = ascending ? Comparator.naturalOrder() : Comparator.reverseOrder();
+        if (COLUMN_PATH.equals(orderBy)) {
+            if (startAfterPath == null) return rows;
+            return IteratorUtils.filteredIterator(rows,
+                    row -> pathOrder.compare(simulatedRowPath(row), startAfterPath) > 0);
+        }
+        Comparator<Value> valueComparator = ValueComparatorFactory.makeComparator(ascending);
+        Iterator<Row> sorted = new TieSortingIterator(rows, valueComparator, pathOrder);
+        if (startAfterPath == null) return sorted;
+        ValueFactory valueFactory = resourceResolver.adaptTo(Session.class).getValueFactory();
+        Value startValue = startAfterValue != null ? createValue(valueFactory, startAfterValue) : null;
+        Map<Integer, Value> convertedStartValues = new HashMap<>();
+        return IteratorUtils.filteredIterator(sorted, row -> {
+            Value value = orderByValue(row);
+            Value start = startValue;
+            if (value != null && start != null && value.getType() != start.getType()) { // compare with the same type
+                start = convertedStartValues.computeIfAbsent(value.getType(), (type) -> {
+                    try {
+                        return valueFactory.createValue(startValue.getString(), type);
+                    } catch (RepositoryException e) {
+                        return startValue;
+                    }
+                });
+            }
+            int comparison = valueComparator.compare(value, start);
+            if (comparison == 0) comparison = pathOrder.compare(simulatedRowPath(row), startAfterPath);
+            return comparison > 0;
+        });
+    }
+
+    /**
+     * Sorts runs of rows with the same ordering value by their path, since the query results are only ordered by the
+     * ordering value.
+     */
+    protected class TieSortingIterator implements Iterator<Row> {
+
+        protected final Iterator<Row> rows;
+        protected final Comparator<Value> valueComparator;
+        protected final Comparator<String> pathOrder;
+        protected Iterator<Row> run = emptyIterator();
+        protected Row pending;
+
+        protected TieSortingIterator(Iterator<Row> rows, Comparator<Value> valueComparator,
+                                     Comparator<String> pathOrder) {
+            this.rows = rows;
+            this.valueComparator = valueComparator;
+            this.pathOrder = pathOrder;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (run.hasNext()) return true;
+            if (pending == null && !rows.hasNext()) return false;
+            Row first = pending != null ? pending : rows.next();
+            pending = null;
+            Value firstValue = orderByValue(first);
+            List<Row> sorted = new ArrayList<>();
+            Map<Row, String> paths = new IdentityHashMap<>();
+            sorted.add(first);
+            paths.put(first, simulatedRowPath(first));
+            while (rows.hasNext()) {
+                Row row = rows.next();
+                if (valueComparator.compare(firstValue, orderByValue(row)) != 0) {
+                    pending = row;
+                    break;
+                }
+                sorted.add(row);
+                paths.put(row, simulatedRowPath(row));
+            }
+            if (sorted.size() > 1) sorted.sort(Comparator.comparing(paths::get, pathOrder));
+            run = sorted.iterator();
+            return true;
+        }
+
+        @Override
+        public Row next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return run.next();
+        }
+    }
+
+    protected Value orderByValue(Row row) {
+        try {
+            return row.getValue("query:orderBy");
+        } catch (RepositoryException e) {
+            throw new SlingException("Unexpected JCR exception", e);
+        }
+    }
+
+    /** The path of the resource a row stands for - for rows from version storage or the workspace copy of the release. */
+    protected String simulatedRowPath(Row row) {
+        try {
+            String rowPath = getString(row, "n.jcr:path");
+            if (release != null && rowPath != null) {
+                if (StagingUtils.isInVersionStorage(rowPath)) {
+                    return calculateSimulatedPath(getString(row, "query:versionUuid"), rowPath);
+                } else if (isSameOrDescendant(release.getWorkspaceCopyNode().getPath(), rowPath)) {
+                    return release.unmapFromContentCopy(rowPath);
+                }
+            }
+            return rowPath;
+        } catch (RepositoryException e) {
+            throw new SlingException("Unexpected JCR exception", e);
+        }
+    }
+
     /** Maps versionUuids of the version references in the release to their paths. */
     protected Map<String, String> giveVersionUuidToVersionReferenceUuidMap() throws RepositoryException {
         if (versionUuidToVersionReferencePathMap == null) {
@@ -283,9 +469,22 @@ public class StagingQueryImpl extends Query {
         return versionUuidToVersionReferencePathMap;
     }
 
+    /**
+     * The path of the version reference in the workspace copy of the release referring to a version - from the shared
+     * {@link ReleasePathIndex} of the release if it was built for our user, otherwise from
+     * {@link #giveVersionUuidToVersionReferenceUuidMap()}, which is read with our own session.
+     */
+    protected String getVersionReferencePath(String versionUuid) throws RepositoryException {
+        if (releasePathIndex != null) {
+            String relativePath = releasePathIndex.getVersionReferencePath(versionUuid);
+            return relativePath != null ? release.getWorkspaceCopyNode().getPath() + '/' + relativePath : null;
+        }
+        return giveVersionUuidToVersionReferenceUuidMap().get(versionUuid);
+    }
+
     /** Calculates the original path where a frozen node is in the release. */
     protected String calculateSimulatedPath(String versionUuid, String frozenPath) throws RepositoryException {
-        String versionablePath = giveVersionUuidToVersionReferenceUuidMap().get(versionUuid);
+        String versionablePath = getVersionReferencePath(versionUuid);
         String unfrozenPath = versionablePath +
                 frozenPath.substring(frozenPath.indexOf(JCR_FROZENNODE) + JCR_FROZENNODE.length());
         String originalPath = release.unmapFromContentCopy(unfrozenPath);
@@ -315,17 +514,14 @@ public class StagingQueryImpl extends Query {
     }
 
     /**
-     * Filters results from the release workspace copy wrt. release mapping and type constraint.
+     * Filters results from the release workspace copy wrt. release mapping. The type constraint is part of the query.
      */
     protected Iterator<Row> filterReleaseWorkspaceCopy(Iterator<Row> rowsFromVersionStorage) {
         Predicate<Row> filter = row -> {
             try {
                 String pathInCopy = getString(row, "n.jcr:path");
                 String path = release.unmapFromContentCopy(pathInCopy);
-                if (!releaseMapper.releaseMappingAllowed(path)) return false;
-                if (null == typeConstraint) return true;
-                return hasAppropriateType(pathInCopy, getString(row, "query:type"),
-                        getString(row, "query:mixin"));
+                return releaseMapper.releaseMappingAllowed(path);
             } catch (RepositoryException e) {
                 throw new SlingException("Unexpected JCR exception", e);
             }
@@ -334,7 +530,7 @@ public class StagingQueryImpl extends Query {
     }
 
     /**
-     * Filters results from version storage wrt. path, release mapping and type constraint.
+     * Filters results from version storage wrt. path and release mapping - the type constraint is part of the query.
      * A historic version of a resource is only used if it is releasemapped.
      */
     protected Iterator<Row> filterFromVersionStorage(Iterator<Row> rowsFromVersionStorage) {
@@ -343,11 +539,8 @@ public class StagingQueryImpl extends Query {
                 String frozenPath = getString(row, "n.jcr:path");
                 String versionUuid = getString(row, "query:versionUuid");
                 String simulatedPath = calculateSimulatedPath(versionUuid, frozenPath);
-                if (!isSameOrDescendant(path, simulatedPath) ||
-                        !releaseMapper.releaseMappingAllowed(simulatedPath)) return false;
-                if (null == typeConstraint) return true;
-                return hasAppropriateType(frozenPath, getString(row, "query:type"),
-                        getString(row, "query:mixin"));
+                return isSameOrDescendant(path, simulatedPath) &&
+                        releaseMapper.releaseMappingAllowed(simulatedPath);
             } catch (RepositoryException e) {
                 throw new SlingException("Unexpected JCR exception", e);
             }
@@ -355,37 +548,25 @@ public class StagingQueryImpl extends Query {
         return IteratorUtils.filteredIterator(rowsFromVersionStorage, filter);
     }
 
-    protected boolean hasAppropriateType(String frozenPath, String type, String mixin) throws RepositoryException {
-        if (matchesTypeConstraint(type)) return true;
-        if (null != mixin) {
-            if (matchesTypeConstraint(mixin)) return true;
-            // since JCR Queries can't return multiple values 8-() we need to query the node in case there are
-            // several mixins. Only the first one is returned from the query. OUCH!
-            Node node = resourceResolver.adaptTo(Session.class).getNode(frozenPath);
-            Value[] mixins = node.getProperty(JcrConstants.JCR_FROZENMIXINTYPES).getValues();
-            for (Value mixinValue : mixins) {
-                if (matchesTypeConstraint(mixinValue.getString())) return true;
-            }
-        }
-        return false;
-    }
-
-    protected boolean matchesTypeConstraint(String type) throws RepositoryException {
-        if (StringUtils.isBlank(typeConstraint))
-            return true;
-        Boolean result = matchesTypeConstraintCache.get(type);
-        if (null == result) {
-            NodeTypeManager nodeTypeManager = resourceResolver.adaptTo(Session.class).getWorkspace()
-                    .getNodeTypeManager();
-            NodeType nodeType = nodeTypeManager.getNodeType(type);
-            result = typeConstraint.equals(nodeType.getName());
-            for (NodeType superType : nodeType.getSupertypes()) {
-                result = result || typeConstraint.equals(superType.getName());
-            }
-            matchesTypeConstraintCache.put(type, result);
-            LOG.debug("Type constraint {} matches={}", type, result);
+    /**
+     * The type constraint for the frozen types of resources in version storage or the workspace copy of a release:
+     * since the query cannot check for subtypes there, we enumerate the types which are of the requested type.
+     * Multi-valued properties match if any of their values matches, so the mixins are fully covered.
+     */
+    @NotNull
+    protected String frozenTypeConstraint() {
+        if (StringUtils.isBlank(typeConstraint) || JcrConstants.NT_BASE.equals(typeConstraint)) return "";
+        Set<String> types;
+        try {
+            NodeTypeManager nodeTypeManager = resourceResolver.adaptTo(Session.class).getWorkspace().getNodeTypeManager();
+            types = NODE_TYPE_HIERARCHY.getTypesOf(nodeTypeManager, typeConstraint);
+        } catch (RepositoryException e) {
+            throw new SlingException("Unexpected JCR exception", e);
         }
-        return result;
+        String typeList = types.stream()
+                .map(type -> "'" + type.replace("'", "''") + "'")
+                .collect(Collectors.joining(", "));
+        return "AND (n.[jcr:frozenPrimaryType] IN (" + typeList + ") OR n.[jcr:frozenMixinTypes] IN (" + typeList + ")) \n";
     }
 
     /** Mimics the JCR Query orderBy comparison. */
@@ -463,8 +644,9 @@ public class StagingQueryImpl extends Query {
                 "WHERE (ISDESCENDANTNODE(n, '" + querypath + "') OR ISSAMENODE(n, '" + querypath + "' )) \n" +
                 notReleaseTree +
                 elementConstraint(mode) +
-                // deliberately no typeConstraint() since we need to check for subtypes, too
+                (WORKSPACECOPY == mode ? frozenTypeConstraint() : "") +
                 propertyConstraint(mode) +
+                startAfterConstraint(mode) +
                 joinSelectConditions(mode) +
                 orderByClause(mode);
     }
@@ -473,8 +655,8 @@ public class StagingQueryImpl extends Query {
      * Queries resources in the version storage. The query returns the path and the ordering clause if orderBy is
      * requested, paths to calculate the location of the original resource and type information. The results are ordered
      * by {@link #orderBy(String)}. <p>
-     * This query ignores the path since that information is not present in version storage, and type constraints, which cannot sensibly be checked there. So this must be filtered
-     * afterwards. But we rely on the default path attribute at the version history pointing somewhere into the release tree,
+     * This query ignores the path since that information is not present in version storage, so this must be filtered
+     * afterwards; type constraints are checked with {@link #frozenTypeConstraint()}. But we rely on the default path attribute at the version history pointing somewhere into the release tree,
      * and that the version is labelled with the release number.
      */
     @NotNull
@@ -490,8 +672,9 @@ public class StagingQueryImpl extends Query {
                 "WHERE ISDESCENDANTNODE(history, '/jcr:system/jcr:versionStorage') \n" +
                 "AND history.[default] like '" + release.getReleaseRoot().getPath() + "/%" + "' \n" +
                 elementConstraint(VERSIONSTORAGE) +
-                // deliberately no typeConstraint() since we need to check for subtypes, too
+                frozenTypeConstraint() +
                 propertyConstraint(VERSIONSTORAGE) +
+                startAfterConstraint(VERSIONSTORAGE) +
                 joinSelectConditions(VERSIONSTORAGE) +
                 orderByClause(VERSIONSTORAGE);
     }
@@ -511,8 +694,9 @@ public class StagingQueryImpl extends Query {
                 "INNER JOIN [nt:version] AS version ON ISCHILDNODE(version, history) \n" +
                 "WHERE ISDESCENDANTNODE(n, '" + pathInsideVersionStorage + "') \n" +
                 elementConstraint(VERSIONSTORAGE) +
-                // deliberately no typeConstraint() since we need to check for subtypes, too
+                frozenTypeConstraint() +
                 propertyConstraint(VERSIONSTORAGE) +
+                startAfterConstraint(VERSIONSTORAGE) +
                 orderByClause(VERSIONSTORAGE);
     }
 
@@ -42,6 +42,12 @@ public abstract class AbstractReplicationService<CONFIG extends AbstractReplicat
     public static final String DIR_REPLICATION = "/replication";
     private static final Logger LOG = LoggerFactory.getLogger(AbstractReplicationService.class);
 
+    /**
+     * The time after which the cached information about the target of a replication is queried again on access,
+     * if it wasn't refreshed in the meantime with {@link ReleaseChangeProcess#updateSynchronized()}.
+     */
+    protected static final long TARGET_INFO_MAX_AGE_MS = 300000;
+
     /**
      * Maps the path to the replication configuration to the process.
      */
@@ -223,6 +229,11 @@ public abstract class AbstractReplicationService<CONFIG extends AbstractReplicat
         protected volatile Boolean hasRelease;
         protected volatile String releaseUuid;
         protected volatile ReplicationConfig cachedConfig;
+        /**
+         * The last {@link #remoteReleaseInfo()}, so that status requests don't query the target each time;
+         * reset when a replication run finished.
+         */
+        protected volatile TargetReleaseInfo targetReleaseInfo;
 
         protected AbstractReplicationProcess(@NotNull Resource releaseRoot, @NotNull CONFIG config) {
             releaseRootPath = releaseRoot.getPath();
@@ -537,6 +548,7 @@ public abstract class AbstractReplicationService<CONFIG extends AbstractReplicat
                     state = error;
                 }
                 finished = System.currentTimeMillis();
+                targetReleaseInfo = null; // the target was changed
                 LOG.info("Finished run with {} : {} - @{}", getState(), getId(), System.identityHashCode(this));
                 updateHistory();
             }
@@ -680,20 +692,43 @@ public abstract class AbstractReplicationService<CONFIG extends AbstractReplicat
         }
 
         /**
-         * The information about the state of the replication on the target system.
+         * The information about the state of the replication on the target system; cached for
+         * {@link #TARGET_INFO_MAX_AGE_MS} if not refreshed with {@link #updateSynchronized()} or reset by a run.
          */
         protected UpdateInfo getTargetReleaseInfo() {
+            TargetReleaseInfo info = targetReleaseInfo;
+            if (info == null || System.currentTimeMillis() - info.queriedAt > TARGET_INFO_MAX_AGE_MS) {
+                info = queryTargetReleaseInfo();
+            }
+            return info.updateInfo;
+        }
+
+        /**
+         * Queries the target and caches the result - also if that failed, to avoid hammering an unavailable target.
+         */
+        @NotNull
+        protected TargetReleaseInfo queryTargetReleaseInfo() {
+            UpdateInfo updateInfo = null;
             try {
-                return remoteReleaseInfo();
+                updateInfo = remoteReleaseInfo();
             } catch (ReplicationException | RuntimeException e) {
                 LOG.error("Error during getTargetReleaseInfo: " + e, e);
-                return null;
             }
+            TargetReleaseInfo info = new TargetReleaseInfo(updateInfo, System.currentTimeMillis());
+            targetReleaseInfo = info;
+            return info;
         }
 
         @Override
         public void updateSynchronized() {
-            // empty
+            queryTargetReleaseInfo();
+        }
+
+        @Nullable
+        @Override
+        public Long getSynchronizedCheckedAt() {
+            TargetReleaseInfo info = targetReleaseInfo;
+            return info != null ? info.queriedAt : null;
         }
 
         @Override
@@ -789,6 +824,22 @@ public abstract class AbstractReplicationService<CONFIG extends AbstractReplicat
         }
     }
 
+    /**
+     * The state of a replication target at a certain time.
+     */
+    protected static class TargetReleaseInfo {
+
+        @Nullable
+        protected final UpdateInfo updateInfo;
+
+        protected final long queriedAt;
+
+        protected TargetReleaseInfo(@Nullable UpdateInfo updateInfo, long queriedAt) {
+            this.updateInfo = updateInfo;
+            this.queriedAt = queriedAt;
+        }
+    }
+
     protected class ReplicationHistoryEntryImpl implements ReleaseChangeProcess.ReplicationHistoryEntry {
 
         protected final ReleaseChangeProcess.ReleaseChangeProcessorState historyState;
@@ -14,6 +14,7 @@ import org.slf4j.Logger;
 
 import org.jetbrains.annotations.NotNull;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
@@ -79,6 +80,32 @@ public interface PublicationReceiverFacade {
     @NotNull
     Status pathupload(@NotNull UpdateInfo updateInfo, @NotNull Resource resource) throws ReplicationException;
 
+    /**
+     * Uploads the resource trees of several resources to the remote machine - with as few transfers as possible if
+     * the implementation supports that. The default uploads each with {@link #pathupload(UpdateInfo, Resource)}.
+     *
+     * @param resources the resources to upload, at most {@link #getMaxPathsPerUpload()}, not empty
+     * @return the status of the first failed upload or of the last upload
+     */
+    @NotNull
+    default Status pathupload(@NotNull UpdateInfo updateInfo, @NotNull List<Resource> resources) throws ReplicationException {
+        Status status = null;
+        for (Resource resource : resources) {
+            status = pathupload(updateInfo, resource);
+            if (status == null || !status.isValid()) {
+                break;
+            }
+        }
+        return status;
+    }
+
+    /**
+     * The maximum number of resources that should be given to {@link #pathupload(UpdateInfo, List)} at once.
+     */
+    default int getMaxPathsPerUpload() {
+        return 1;
+    }
+
     /**
      * Replaces the content with the updated content and deletes obsolete paths.
      *
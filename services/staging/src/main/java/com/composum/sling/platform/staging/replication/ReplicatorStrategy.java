@@ -37,6 +37,11 @@ public class ReplicatorStrategy {
 
     private static final Logger LOG = LoggerFactory.getLogger(ReplicatorStrategy.class);
 
+    /**
+     * How often the upload of a path is tried before the replication fails.
+     */
+    protected static final int UPLOAD_ATTEMPTS = 3;
+
     @NotNull
     protected final Set<String> changedPaths;
     @NotNull
@@ -145,26 +150,7 @@ public class ReplicatorStrategy {
             pathsToTransmit.addAll(contentState.getVersionables().getChangedPaths());
             Set<String> deletedPaths = new LinkedHashSet<>(contentState.getVersionables().getDeletedPaths());
             pathsToTransmit.addAll(deletedPaths); // to synchronize parents
-            int count = 0;
-            for (String path : pathsToTransmit) {
-                abortIfNecessary(updateInfo);
-                ++count;
-                progress = 89 * (count) / pathsToTransmit.size();
-
-                Resource resource = resolver.getResource(path);
-                if (resource == null) { // we need to transmit the parent nodes even of deleted resources
-                    deletedPaths.add(path);
-                    resource = new NonExistingResource(resolver, path);
-                }
-
-                Status status = publisher.pathupload(updateInfo, resource);
-                if (status == null || !status.isValid()) {
-                    messages.add(Message.error("Received invalid status on pathupload {} : {}", path, status));
-                    throw new ReplicationException(Message.error("Upload failed to replication {}", replicationConfig.getPath()).setPath(path), null);
-                } else {
-                    messages.add(Message.debug("Uploaded {} for {}", path, updateInfo.updateId));
-                }
-            }
+            uploadPaths(updateInfo, pathsToTransmit, deletedPaths);
 
             abortIfNecessary(updateInfo);
             progress = 90;
@@ -201,6 +187,86 @@ public class ReplicatorStrategy {
         }
     }
 
+    /**
+     * Uploads the resources at the paths in batches of {@link PublicationReceiverFacade#getMaxPathsPerUpload()}, one
+     * after another: the receiver imports all uploads of an update into the same temporary content.
+     *
+     * @param deletedPaths paths that don't exist anymore are added here
+     */
+    protected void uploadPaths(@NotNull UpdateInfo updateInfo, @NotNull Collection<String> pathsToTransmit,
+                               @NotNull Set<String> deletedPaths) throws ReplicationException {
+        int count = 0;
+        int batchSize = Math.max(1, publisher.getMaxPathsPerUpload());
+        List<String> batch = new ArrayList<>();
+        for (Iterator<String> it = pathsToTransmit.iterator(); it.hasNext(); ) {
+            batch.add(it.next());
+            if (batch.size() < batchSize && it.hasNext()) {
+                continue;
+            }
+            abortIfNecessary(updateInfo);
+            count += batch.size();
+            progress = 89 * (count) / pathsToTransmit.size();
+            uploadWithRetries(updateInfo, batch, deletedPaths);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Uploads a batch; if that fails, the paths are retried one by one, each up to {@link #UPLOAD_ATTEMPTS} times.
+     */
+    protected void uploadWithRetries(@NotNull UpdateInfo updateInfo, @NotNull List<String> paths,
+                                     @NotNull Set<String> deletedPaths) throws ReplicationException {
+        try {
+            uploadBatch(updateInfo, paths, deletedPaths);
+            return;
+        } catch (ReplicationException e) {
+            if (abortAtNextPossibility) {
+                throw e;
+            }
+            LOG.warn("Upload of {} failed, retrying per path: {}", paths, e.toString());
+        }
+        for (String path : paths) {
+            for (int attempt = paths.size() > 1 ? 1 : 2; ; ++attempt) {
+                try {
+                    uploadBatch(updateInfo, Collections.singletonList(path), deletedPaths);
+                    break;
+                } catch (ReplicationException e) {
+                    if (attempt >= UPLOAD_ATTEMPTS || abortAtNextPossibility) {
+                        throw e;
+                    }
+                    LOG.warn("Upload of {} failed in attempt {}: {}", path, attempt, e.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Uploads the resources at the paths - several at once if the publisher supports that.
+     *
+     * @param deletedPaths paths that don't exist anymore are added here
+     */
+    protected void uploadBatch(@NotNull UpdateInfo updateInfo, @NotNull List<String> paths,
+                               @NotNull Set<String> deletedPaths) throws ReplicationException {
+        List<Resource> resources = new ArrayList<>();
+        for (String path : paths) {
+            Resource resource = resolver.getResource(path);
+            if (resource == null) { // we need to transmit the parent nodes even of deleted resources
+                deletedPaths.add(path);
+                resource = new NonExistingResource(resolver, path);
+            }
+            resources.add(resource);
+        }
+
+        Status status = resources.size() == 1 ? publisher.pathupload(updateInfo, resources.get(0))
+                : publisher.pathupload(updateInfo, resources);
+        if (status == null || !status.isValid()) {
+            messages.add(Message.error("Received invalid status on pathupload {} : {}", paths, status));
+            throw new ReplicationException(Message.error("Upload failed to replication {}", replicationConfig.getPath()).setPath(paths.get(0)), null);
+        } else {
+            messages.add(Message.debug("Uploaded {} for {}", paths, updateInfo.updateId));
+        }
+    }
+
     /**
      * Returns childnode orderings of all parent nodes of {pathsToTransmit} and, if any of pathsToTransmit
      * has versionables as subnodes, of their parent nodes, too. (This needs to work for a full release sync, too.)
@@ -22,6 +22,18 @@ import java.util.stream.Stream;
  */
 public interface PublicationReceiverBackend {
 
+    /**
+     * Prefix for the names of the zip entries containing the packages in a batch for
+     * {@link #batchUpload(String, InputStream)}.
+     */
+    String BATCH_PACKAGE_PREFIX = "package-";
+
+    /**
+     * Name of the zip entry that lists the root paths of the packages of a batch for
+     * {@link #batchUpload(String, InputStream)}, one per line, in the order of the packages. Written after the packages.
+     */
+    String BATCH_MANIFEST = "manifest.txt";
+
     boolean isEnabled();
 
     /**
@@ -42,6 +54,14 @@ public interface PublicationReceiverBackend {
     void pathUpload(@Nullable String updateId, @NotNull String packageRootPath, @NotNull InputStream inputStream)
             throws ReplicationException;
 
+    /**
+     * Uploads several packages into the temporary directory at once, like {@link #pathUpload(String, String, InputStream)}
+     * for each of them, but saved together. The stream is a zip containing the packages as entries named
+     * {@link #BATCH_PACKAGE_PREFIX} + number and the {@link #BATCH_MANIFEST} with their root paths.
+     */
+    void batchUpload(@Nullable String updateId, @NotNull InputStream batchStream)
+            throws ReplicationException;
+
     /**
      * Moves the content to the content directory and deletes the given paths, thus finalizing the update. The
      * temporary directory is then deleted.
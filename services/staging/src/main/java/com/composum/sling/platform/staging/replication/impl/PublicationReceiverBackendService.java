@@ -15,6 +15,8 @@ import com.composum.sling.platform.staging.replication.json.NodeAttributeCompari
 import com.composum.sling.platform.staging.replication.json.VersionableInfo;
 import com.composum.sling.platform.staging.replication.json.VersionableTree;
 import com.google.common.collect.ImmutableBiMap;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.jackrabbit.vault.fs.api.ProgressTrackerListener;
@@ -50,11 +52,14 @@ import javax.jcr.Session;
 import javax.jcr.UnsupportedRepositoryOperationException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Random;
@@ -63,6 +68,8 @@ import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import static com.composum.sling.core.util.SlingResourceUtil.appendPaths;
 import static com.composum.sling.core.util.SlingResourceUtil.getPath;
@@ -247,38 +254,105 @@ public class PublicationReceiverBackendService implements PublicationReceiverBac
             ModifiableValueMap vm = requireNonNull(tmpLocation.adaptTo(ModifiableValueMap.class));
             ReplicationPaths replicationPaths = new ReplicationPaths(vm);
 
-            ZipStreamArchive archive = new ZipStreamArchive(inputStream);
-            try {
-                Session session = requireNonNull(resolver.adaptTo(Session.class));
-
-                Importer importer = new Importer();
-                importer.getOptions().setFilter(new DefaultWorkspaceFilter());
-                archive.open(true);
-                LOG.info("Importing {}", archive.getMetaInf().getProperties());
-                importer.run(archive, session, tmpLocation.getPath());
-                setLoggingProgressTracker(importer);
-                if (importer.hasErrors()) {
-                    LOG.error("Aborting import on {} to {}: importer has errors. {}",
-                            updateId, packageRootPath, archive.getMetaInf().getProperties());
-                    throw new ReplicationException(Message.error("Aborting: internal error importing on remote " +
-                            "system - please consult the logfile for details.").setPath(packageRootPath), null);
+            Session session = requireNonNull(resolver.adaptTo(Session.class));
+            importPackage(session, tmpLocation, updateId, packageRootPath, inputStream);
+            processMove(resolver, SlingResourceUtil.appendPaths(tmpLocation.getPath(), packageRootPath), replicationPaths);
+            session.save();
+
+            addUpdatedPaths(resolver, tmpLocation, Collections.singletonList(packageRootPath));
+        } catch (IOException e) {
+            throw new ReplicationException(
+                    Message.error("Error reading package for {} in backend", packageRootPath).setPath(packageRootPath), e);
+        } catch (ConfigurationException | RepositoryException e) {
+            throw new ReplicationException(Message.error("Internal error on remote system: {}", e).setPath(packageRootPath), e);
+        }
+    }
+
+    @Override
+    public void batchUpload(@Nullable String updateId, @NotNull InputStream batchStream) throws ReplicationException {
+        LOG.info("Batchupload called for {}", updateId);
+        String currentPath = null;
+        try (ResourceResolver resolver = makeResolver()) {
+            Resource tmpLocation = getTmpLocation(resolver, updateId, false, true);
+            ModifiableValueMap vm = requireNonNull(tmpLocation.adaptTo(ModifiableValueMap.class));
+            ReplicationPaths replicationPaths = new ReplicationPaths(vm);
+            Session session = requireNonNull(resolver.adaptTo(Session.class));
+
+            List<String> packageRootPaths = null;
+            int importedPackages = 0;
+            ZipInputStream zip = new ZipInputStream(batchStream);
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                if (BATCH_MANIFEST.equals(entry.getName())) {
+                    packageRootPaths = IOUtils.readLines(new CloseShieldInputStream(zip), StandardCharsets.UTF_8)
+                            .stream().filter(StringUtils::isNotBlank).collect(Collectors.toList());
+                } else if (entry.getName().startsWith(BATCH_PACKAGE_PREFIX)) {
+                    currentPath = entry.getName();
+                    importPackage(session, tmpLocation, updateId, entry.getName(), new CloseShieldInputStream(zip));
+                    importedPackages++;
                 }
+                zip.closeEntry();
+            }
+            // ZipInputStream stops at the central directory - read the rest so that the writer can finish.
+            IOUtils.skip(batchStream, Long.MAX_VALUE);
+            currentPath = null;
+            if (packageRootPaths == null || packageRootPaths.size() != importedPackages) {
+                throw new ReplicationException(Message.error("Incomplete upload: {} packages for manifest {}",
+                        importedPackages, packageRootPaths), null);
+            }
+            LOG.info("Imported for {} : {}", updateId, packageRootPaths);
 
+            for (String packageRootPath : packageRootPaths) {
+                currentPath = packageRootPath;
                 processMove(resolver, SlingResourceUtil.appendPaths(tmpLocation.getPath(), packageRootPath), replicationPaths);
-                session.save();
-            } finally {
-                archive.close();
             }
+            currentPath = null;
+            session.save();
 
-            List<String> newPaths = new ArrayList<>(asList(vm.get(ReplicationConstants.ATTR_UPDATEDPATHS, new String[0])));
-            newPaths.add(packageRootPath);
-            vm.put(ReplicationConstants.ATTR_UPDATEDPATHS, newPaths.toArray(new String[0]));
-            resolver.commit();
+            addUpdatedPaths(resolver, tmpLocation, packageRootPaths);
         } catch (IOException e) {
-            throw new ReplicationException(
-                    Message.error("Error reading package for {} in backend", packageRootPath).setPath(packageRootPath), e);
+            throw new ReplicationException(Message.error("Error reading package batch in backend").setPath(currentPath), e);
         } catch (ConfigurationException | RepositoryException e) {
-            throw new ReplicationException(Message.error("Internal error on remote system: {}", e).setPath(packageRootPath), e);
+            throw new ReplicationException(Message.error("Internal error on remote system: {}", e).setPath(currentPath), e);
+        }
+    }
+
+    /**
+     * Records the uploaded package root paths at the temporary directory; paths uploaded again (retries) are
+     * recorded only once.
+     */
+    protected void addUpdatedPaths(@NotNull ResourceResolver resolver, @NotNull Resource tmpLocation,
+                                   @NotNull Collection<String> packageRootPaths) throws PersistenceException {
+        ModifiableValueMap vm = requireNonNull(tmpLocation.adaptTo(ModifiableValueMap.class));
+        Set<String> newPaths = new LinkedHashSet<>(asList(vm.get(ReplicationConstants.ATTR_UPDATEDPATHS, new String[0])));
+        newPaths.addAll(packageRootPaths);
+        vm.put(ReplicationConstants.ATTR_UPDATEDPATHS, newPaths.toArray(new String[0]));
+        resolver.commit();
+    }
+
+    /**
+     * Imports one package into the temporary directory. The session is not saved.
+     *
+     * @param packageName the root path of the package or another name to identify it in messages
+     */
+    protected void importPackage(@NotNull Session session, @NotNull Resource tmpLocation, @Nullable String updateId,
+                                 @NotNull String packageName, @NotNull InputStream inputStream)
+            throws IOException, ConfigurationException, RepositoryException, ReplicationException {
+        ZipStreamArchive archive = new ZipStreamArchive(inputStream);
+        try {
+            Importer importer = new Importer();
+            importer.getOptions().setFilter(new DefaultWorkspaceFilter());
+            archive.open(true);
+            LOG.info("Importing {}", archive.getMetaInf().getProperties());
+            importer.run(archive, session, tmpLocation.getPath());
+            setLoggingProgressTracker(importer);
+            if (importer.hasErrors()) {
+                LOG.error("Aborting import on {} to {}: importer has errors. {}",
+                        updateId, packageName, archive.getMetaInf().getProperties());
+                throw new ReplicationException(Message.error("Aborting: internal error importing on remote " +
+                        "system - please consult the logfile for details.").setPath(packageName), null);
+            }
+        } finally {
+            archive.close();
         }
     }
 
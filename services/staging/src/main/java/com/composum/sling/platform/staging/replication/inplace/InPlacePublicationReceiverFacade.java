@@ -18,6 +18,8 @@ import com.composum.sling.platform.staging.replication.impl.PublicationReceiverB
 import com.composum.sling.platform.staging.replication.json.ChildrenOrderInfo;
 import com.composum.sling.platform.staging.replication.json.NodeAttributeComparisonInfo;
 import com.composum.sling.platform.staging.replication.json.VersionableTree;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.Resource;
@@ -32,13 +34,18 @@ import javax.jcr.RepositoryException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static com.composum.sling.platform.staging.replication.ReplicationConstants.*;
 
@@ -157,24 +164,7 @@ public class InPlacePublicationReceiverFacade implements PublicationReceiverFaca
     @Override
     public Status pathupload(@NotNull UpdateInfo updateInfo, @NotNull Resource resource) throws ReplicationException {
         Status status = new Status(null, null, LOG);
-        Resource writeResource = resource;
-        if (com.composum.sling.core.util.ResourceUtil.isFile(resource) && ResourceUtil.CONTENT_NODE.equals(resource.getName())) {
-            // you need the parent node to form a correct package for this, since the file format is special.
-            writeResource = resource.getParent();
-        }
-        SourceModel model = new SourceModel(nodesConfiguration, context, writeResource);
-        ExceptionThrowingConsumer<OutputStream, IOException> writer = (outstream) -> {
-            try {
-                model.writePackage(outstream, "inplacepublisher", resource.getPath(), "1");
-            } catch (SourceModel.IOErrorOnCloseException e) {
-                LOG.debug("Internal error on zip close", e);
-                // ignore - the reader doesn't read the central directory of the zip that is written on close.
-            } catch (RepositoryException e) {
-                throw new IOException(e);
-            } catch (IOException e) {
-                throw e;
-            }
-        };
+        ExceptionThrowingConsumer<OutputStream, IOException> writer = (outstream) -> writePackage(outstream, resource);
 
         try (InputStream inputStream = OutputStreamInputStreamAdapter.of(writer, threadPool)) {
             backend.pathUpload(updateInfo.updateId, resource.getPath(), inputStream);
@@ -184,6 +174,86 @@ public class InPlacePublicationReceiverFacade implements PublicationReceiverFaca
         return status;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The packages for the resources are transferred together in a zip with a manifest of their root paths, which
+     * the backend imports at once. If that gets larger than the configured maximum bytes, the rest of the resources
+     * is transferred in another upload.
+     */
+    @NotNull
+    @Override
+    public Status pathupload(@NotNull UpdateInfo updateInfo, @NotNull List<Resource> resources) throws ReplicationException {
+        Status status = new Status(null, null, LOG);
+        long maxBytes = generalConfig.get().uploadBatchMaxBytes();
+        int start = 0;
+        while (start < resources.size()) {
+            List<Resource> remaining = resources.subList(start, resources.size());
+            AtomicInteger written = new AtomicInteger();
+            ExceptionThrowingConsumer<OutputStream, IOException> writer = (outstream) -> {
+                CountingOutputStream counter = new CountingOutputStream(outstream);
+                ZipOutputStream zip = new ZipOutputStream(counter);
+                List<String> packageRootPaths = new ArrayList<>();
+                for (Resource resource : remaining) {
+                    if (!packageRootPaths.isEmpty() && counter.getByteCount() >= maxBytes) {
+                        break;
+                    }
+                    zip.putNextEntry(new ZipEntry(PublicationReceiverBackend.BATCH_PACKAGE_PREFIX + packageRootPaths.size()));
+                    writePackage(new CloseShieldOutputStream(zip), resource);
+                    zip.closeEntry();
+                    packageRootPaths.add(resource.getPath());
+                }
+                zip.putNextEntry(new ZipEntry(PublicationReceiverBackend.BATCH_MANIFEST));
+                zip.write(String.join("\n", packageRootPaths).getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+                written.set(packageRootPaths.size());
+                try {
+                    zip.close();
+                } catch (IOException e) {
+                    LOG.debug("Internal error on zip close", e);
+                    // ignore - the reader stops at the central directory of the zip that is written on close.
+                }
+            };
+
+            try (InputStream inputStream = OutputStreamInputStreamAdapter.of(writer, threadPool)) {
+                backend.batchUpload(updateInfo.updateId, inputStream);
+            } catch (IOException | RuntimeException e) {
+                throw new ReplicationException(Message.error("Internal error during upload")
+                        .setPath(SlingResourceUtil.getPath(remaining.get(0))), e);
+            }
+            if (written.get() <= 0) { // safety check - the backend should have complained
+                throw new ReplicationException(Message.error("Upload failed").setPath(SlingResourceUtil.getPath(remaining.get(0))), null);
+            }
+            start += written.get();
+        }
+        return status;
+    }
+
+    @Override
+    public int getMaxPathsPerUpload() {
+        return generalConfig.get().uploadBatchSize();
+    }
+
+    /**
+     * Writes a package with the resource tree.
+     */
+    protected void writePackage(@NotNull OutputStream outstream, @NotNull Resource resource) throws IOException {
+        Resource writeResource = resource;
+        if (com.composum.sling.core.util.ResourceUtil.isFile(resource) && ResourceUtil.CONTENT_NODE.equals(resource.getName())) {
+            // you need the parent node to form a correct package for this, since the file format is special.
+            writeResource = resource.getParent();
+        }
+        SourceModel model = new SourceModel(nodesConfiguration, context, writeResource);
+        try {
+            model.writePackage(outstream, "inplacepublisher", resource.getPath(), "1");
+        } catch (SourceModel.IOErrorOnCloseException e) {
+            LOG.debug("Internal error on zip close", e);
+            // ignore - the reader doesn't read the central directory of the zip that is written on close.
+        } catch (RepositoryException e) {
+            throw new IOException(e);
+        }
+    }
+
     @NotNull
     @Override
     public Status commitUpdate(@NotNull UpdateInfo updateInfo, @NotNull String newReleaseChangeNumber, @NotNull Set<String> deletedPaths, @NotNull Supplier<Stream<ChildrenOrderInfo>> relevantOrderings, @NotNull ExceptionThrowingRunnable<? extends Exception> checkForParallelModifications) throws ReplicationException {
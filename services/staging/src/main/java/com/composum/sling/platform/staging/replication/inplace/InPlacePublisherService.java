@@ -239,6 +239,18 @@ public class InPlacePublisherService
         )
         String contentPath() default "/content";
 
+        @AttributeDefinition(
+                name = "Upload batch size",
+                description = "the maximum number of changed paths transferred together in one upload; default 100"
+        )
+        int uploadBatchSize() default 100;
+
+        @AttributeDefinition(
+                name = "Upload batch bytes",
+                description = "an upload is closed and a new one is started when it exceeds this many bytes; default 16 MB"
+        )
+        long uploadBatchMaxBytes() default 16777216;
+
     }
 
 }
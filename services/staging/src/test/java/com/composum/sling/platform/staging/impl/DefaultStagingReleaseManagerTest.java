@@ -32,7 +32,9 @@ import javax.jcr.nodetype.NodeType;
 import javax.jcr.version.Version;
 import javax.jcr.version.VersionManager;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.function.Function;
 import java.util.List;
 import java.util.Map;
@@ -662,6 +664,162 @@ public class DefaultStagingReleaseManagerTest extends Assert implements StagingC
         ec.checkThat(releaseResolver.getResource(filePath), notNullValue());
     }
 
+    /**
+     * A bulk update processes the versionables in path order; if a versionable is given several times, only the last
+     * one counts. The whole update is published as one event.
+     */
+    @Test
+    public void bulkUpdateOrderAndDeduplication() throws Exception {
+        String document1Path = releaseRootBuilder.resource("bulk/document1/jcr:content", PROP_PRIMARY_TYPE, TYPE_UNSTRUCTURED,
+                PROP_MIXINTYPES, array(TYPE_VERSIONABLE)).commit().getCurrentParent().getPath();
+        String document2Path = releaseRootBuilder.resource("bulk/document2/jcr:content", PROP_PRIMARY_TYPE, TYPE_UNSTRUCTURED,
+                PROP_MIXINTYPES, array(TYPE_VERSIONABLE)).commit().getCurrentParent().getPath();
+        Version document1Version1 = versionManager.checkpoint(document1Path);
+        ReleasedVersionable document1Released1 = ReleasedVersionable.forBaseVersion(context.resourceResolver().getResource(document1Path));
+        Version document1Version2 = versionManager.checkpoint(document1Path);
+        ReleasedVersionable document1Released2 = ReleasedVersionable.forBaseVersion(context.resourceResolver().getResource(document1Path));
+        versionManager.checkpoint(document2Path);
+        ReleasedVersionable document2Released = ReleasedVersionable.forBaseVersion(context.resourceResolver().getResource(document2Path));
+        ec.checkThat(document1Released1.getVersionUuid(), is(document1Version1.getIdentifier()));
+        ec.checkThat(document1Released2.getVersionUuid(), is(document1Version2.getIdentifier()));
+
+        DefaultStagingReleaseManager manager = (DefaultStagingReleaseManager) AroundActionsWrapper.retrieveWrappedObject(service);
+        DefaultStagingReleaseManager.BulkReleaseUpdate bulk = manager.new BulkReleaseUpdate(
+                DefaultStagingReleaseManager.ReleaseImpl.unwrap(currentRelease), new ReleaseChangeEvent(currentRelease));
+        List<ReleasedVersionable> ordered = bulk.inUpdateOrder(asList(document2Released, document1Released1, document1Released2));
+        ec.checkThat(ordered.stream().map(ReleasedVersionable::getRelativePath).collect(Collectors.toList()),
+                contains("bulk/document1/jcr:content", "bulk/document2/jcr:content"));
+        ec.checkThat(ordered.get(0).getVersionUuid(), is(document1Version2.getIdentifier()));
+
+        Mockito.reset(releaseChangeEventPublisher);
+        service.updateRelease(currentRelease, asList(document2Released, document1Released2, document1Released1));
+        Mockito.verify(releaseChangeEventPublisher, times(1)).publishActivation(any());
+
+        Resource document1 = context.resourceResolver().getResource(document1Path);
+        referenceRefersToVersionableVersion(releaseStorageRoot.getChild("current/root/bulk/document1/jcr:content"),
+                document1, document1Version1);
+        ec.checkThat(service.listReleaseContents(currentRelease).stream().map(ReleasedVersionable::getRelativePath).collect(Collectors.toList()),
+                contains("bulk/document1/jcr:content", "bulk/document2/jcr:content", "jcr:content"));
+        ec.checkThat(document1Version1.getContainingHistory().getVersionLabels(document1Version1),
+                arrayContaining(StagingConstants.RELEASE_LABEL_PREFIX + currentRelease.getNumber()));
+        ec.checkThat(document1Version2.getContainingHistory().getVersionLabels(document1Version2).length, is(0));
+    }
+
+    /**
+     * The check whether parents have to be deactivated is deferred to the end of the update, which is still left to
+     * the caller to commit.
+     */
+    @Test
+    public void bulkDeactivationOfParents() throws Exception {
+        String document1Path = releaseRootBuilder.resource("parent/document1/jcr:content", PROP_PRIMARY_TYPE, TYPE_UNSTRUCTURED,
+                PROP_MIXINTYPES, array(TYPE_VERSIONABLE)).commit().getCurrentParent().getPath();
+        String document2Path = releaseRootBuilder.resource("parent/document2/jcr:content", PROP_PRIMARY_TYPE, TYPE_UNSTRUCTURED,
+                PROP_MIXINTYPES, array(TYPE_VERSIONABLE)).commit().getCurrentParent().getPath();
+        versionManager.checkpoint(document1Path);
+        versionManager.checkpoint(document2Path);
+        service.updateRelease(currentRelease, asList(
+                ReleasedVersionable.forBaseVersion(context.resourceResolver().getResource(document1Path)),
+                ReleasedVersionable.forBaseVersion(context.resourceResolver().getResource(document2Path))));
+        String parentPath = releaseRoot.getPath() + "/parent";
+        ResourceResolver stagedResolver = service.getResolverForRelease(currentRelease, null, false);
+        ec.checkThat(stagedResolver.getResource(parentPath), notNullValue());
+
+        ReleasedVersionable document1Released = service.findReleasedVersionable(currentRelease, document1Path);
+        ReleasedVersionable document2Released = service.findReleasedVersionable(currentRelease, document2Path);
+        document1Released.setActive(false);
+        document2Released.setActive(false);
+
+        DefaultStagingReleaseManager manager = (DefaultStagingReleaseManager) AroundActionsWrapper.retrieveWrappedObject(service);
+        Mockito.reset(releaseChangeEventPublisher);
+
+        // unwrapped, to see that nothing is committed in between
+        manager.updateRelease(currentRelease, asList(document2Released, document1Released));
+        Mockito.verify(releaseChangeEventPublisher, times(1)).publishActivation(any());
+        try (ResourceResolver committedResolver = context.resourceResolver().clone(null)) {
+            Resource committedReference = committedResolver.getResource(releaseStorageRoot.getPath() + "/current/root/parent/document1/jcr:content");
+            ec.checkThat(committedReference.getValueMap().get(PROP_DEACTIVATED, false), is(false));
+        }
+        context.resourceResolver().commit();
+
+        ec.checkThat(releaseStorageRoot.getChild("current/root/parent").getValueMap().get(PROP_DEACTIVATED, false), is(true));
+        stagedResolver = service.getResolverForRelease(currentRelease, null, false);
+        ec.checkThat(stagedResolver.getResource(parentPath), nullValue());
+    }
+
+    /**
+     * {@link StagingReleaseManager#compareReleases(Release, Release)} merges the contents of both releases by the
+     * version history uuid, so the differences come in that order.
+     */
+    @Test
+    public void compareReleases() throws Exception {
+        Map<String, Resource> documents = new HashMap<>();
+        for (String name : asList("unchanged", "changed", "removed", "added")) {
+            Resource document = releaseRootBuilder.resource("compare/" + name + "/jcr:content", PROP_PRIMARY_TYPE, TYPE_UNSTRUCTURED,
+                    PROP_MIXINTYPES, array(TYPE_VERSIONABLE)).commit().getCurrentParent();
+            versionManager.checkpoint(document.getPath());
+            documents.put(name, document);
+        }
+        service.updateRelease(currentRelease, asList(ReleasedVersionable.forBaseVersion(documents.get("unchanged")),
+                ReleasedVersionable.forBaseVersion(documents.get("changed")),
+                ReleasedVersionable.forBaseVersion(documents.get("removed"))));
+
+        // without a previous release everything is returned
+        List<ReleasedVersionable> differences = service.compareReleases(currentRelease, null);
+        ec.checkThat(differences.stream().map(ReleasedVersionable::getRelativePath).collect(Collectors.toList()),
+                containsInAnyOrder("jcr:content", "compare/unchanged/jcr:content", "compare/changed/jcr:content",
+                        "compare/removed/jcr:content"));
+        checkOrderedByVersionHistory(differences);
+        ec.checkThat(lazyComparison(currentRelease, null), is(differences));
+
+        Release r1 = service.finalizeCurrentRelease(releaseRoot, ReleaseNumberCreator.MAJOR);
+        currentRelease = service.findRelease(releaseRoot, CURRENT_RELEASE);
+        ec.checkThat(service.compareReleases(currentRelease, null), hasSize(0));
+
+        Version changedVersion = versionManager.checkpoint(documents.get("changed").getPath());
+        ReleasedVersionable removed = ReleasedVersionable.forBaseVersion(documents.get("removed"));
+        removed.setVersionUuid(null); // instruction to remove it
+        service.updateRelease(currentRelease, asList(ReleasedVersionable.forBaseVersion(documents.get("changed")),
+                removed, ReleasedVersionable.forBaseVersion(documents.get("added"))));
+
+        differences = service.compareReleases(currentRelease, null);
+        Map<String, ReleasedVersionable> byPath = differences.stream()
+                .collect(Collectors.toMap(ReleasedVersionable::getRelativePath, Function.identity()));
+        ec.checkThat(byPath.keySet(), containsInAnyOrder("compare/changed/jcr:content", "compare/removed/jcr:content",
+                "compare/added/jcr:content"));
+        ec.checkThat(byPath.get("compare/changed/jcr:content").getVersionUuid(), is(changedVersion.getUUID()));
+        ec.checkThat(byPath.get("compare/removed/jcr:content").getVersionUuid(), nullValue());
+        ec.checkThat(byPath.get("compare/removed/jcr:content").getVersionHistory(),
+                is(ReleasedVersionable.forBaseVersion(documents.get("removed")).getVersionHistory()));
+        ec.checkThat(byPath.get("compare/added/jcr:content").getVersionUuid(), notNullValue());
+        checkOrderedByVersionHistory(differences);
+        ec.checkThat(lazyComparison(currentRelease, null), is(differences));
+
+        // an explicitly given release is the same as the default previous release; the other way around it's reversed
+        ec.checkThat(service.compareReleases(currentRelease, r1), is(differences));
+        differences = service.compareReleases(r1, currentRelease);
+        byPath = differences.stream()
+                .collect(Collectors.toMap(ReleasedVersionable::getRelativePath, Function.identity()));
+        ec.checkThat(byPath.keySet(), containsInAnyOrder("compare/changed/jcr:content", "compare/removed/jcr:content",
+                "compare/added/jcr:content"));
+        ec.checkThat(byPath.get("compare/added/jcr:content").getVersionUuid(), nullValue());
+        ec.checkThat(byPath.get("compare/removed/jcr:content").getVersionUuid(), notNullValue());
+        checkOrderedByVersionHistory(differences);
+    }
+
+    protected List<ReleasedVersionable> lazyComparison(Release release, Release previousRelease) throws RepositoryException {
+        List<ReleasedVersionable> result = new ArrayList<>();
+        service.compareReleasesLazily(release, previousRelease).forEachRemaining(result::add);
+        return result;
+    }
+
+    protected void checkOrderedByVersionHistory(List<ReleasedVersionable> releasedVersionables) {
+        List<String> versionHistories = releasedVersionables.stream()
+                .map(ReleasedVersionable::getVersionHistory).collect(Collectors.toList());
+        List<String> sorted = new ArrayList<>(versionHistories);
+        Collections.sort(sorted);
+        ec.checkThat(versionHistories, is(sorted));
+    }
+
     protected void commitAndCheck() throws PersistenceException, RepositoryException {
         releaseRootBuilder.commit();
         ec.checkThat(AroundActionsWrapper.retrieveWrappedObject(service).cleanupLabels(releaseRoot), is(0));
@@ -0,0 +1,44 @@
+package com.composum.sling.platform.staging.impl;
+
+import com.composum.sling.platform.testing.testutil.ErrorCollectorAlwaysPrintingFailures;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests for {@link ReleaseMetadataCache} - which observed changes drop a snapshot.
+ */
+public class ReleaseMetadataCacheTest {
+
+    @Rule
+    public ErrorCollectorAlwaysPrintingFailures ec = new ErrorCollectorAlwaysPrintingFailures();
+
+    @Test
+    public void releaseRootPathOf() {
+        ec.checkThat(ReleaseMetadataCache.releaseRootPathOf("/var/composum/content/site/cpl:releases/r1/root"),
+                is("/content/site"));
+        ec.checkThat(ReleaseMetadataCache.releaseRootPathOf("/var/composum/content/site/cpl:releases"),
+                is("/content/site"));
+        ec.checkThat(ReleaseMetadataCache.releaseRootPathOf("/var/composum/content/site"), nullValue());
+        ec.checkThat(ReleaseMetadataCache.releaseRootPathOf(null), nullValue());
+    }
+
+    @Test
+    public void affectsReleaseNodes() {
+        // the release root data as a whole, the releases node and its properties (the marks)
+        ec.checkThat(ReleaseMetadataCache.affectsReleaseNodes("/var/composum/content/site"), is(true));
+        ec.checkThat(ReleaseMetadataCache.affectsReleaseNodes("/var/composum/content/site/cpl:releases"), is(true));
+        ec.checkThat(ReleaseMetadataCache.affectsReleaseNodes("/var/composum/content/site/cpl:releases/public"), is(true));
+        // release nodes, their properties and children
+        ec.checkThat(ReleaseMetadataCache.affectsReleaseNodes("/var/composum/content/site/cpl:releases/r1"), is(true));
+        ec.checkThat(ReleaseMetadataCache.affectsReleaseNodes("/var/composum/content/site/cpl:releases/r1/jcr:uuid"), is(true));
+        ec.checkThat(ReleaseMetadataCache.affectsReleaseNodes("/var/composum/content/site/cpl:releases/r1/root"), is(true));
+        // changes within the releases
+        ec.checkThat(ReleaseMetadataCache.affectsReleaseNodes("/var/composum/content/site/cpl:releases/r1/root/cpl:releaseChangeNumber"), is(false));
+        ec.checkThat(ReleaseMetadataCache.affectsReleaseNodes("/var/composum/content/site/cpl:releases/r1/root/page/jcr:content"), is(false));
+        ec.checkThat(ReleaseMetadataCache.affectsReleaseNodes("/var/composum/content/site/cpl:releases/r1/metaData/jcr:title"), is(false));
+    }
+
+}
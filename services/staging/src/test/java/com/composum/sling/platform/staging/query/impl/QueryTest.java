@@ -33,8 +33,14 @@ import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.Workspace;
 import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static com.composum.sling.core.util.CoreConstants.PROP_MIXINTYPES;
 import static com.composum.sling.core.util.ResourceUtil.*;
@@ -471,6 +477,124 @@ public class QueryTest extends AbstractStagingTest {
         errorCollector.checkThat(results, contains(document1 + "/" + PROP_JCR_CONTENT, document2 + "/" + PROP_JCR_CONTENT));
     }
 
+    @Test
+    public void keysetPagingByPath() throws RepositoryException {
+        for (ResourceResolver resolver : Arrays.asList(context.resourceResolver(), this.stagingResourceResolver)) {
+            Query q = QueryBuilder.makeQuery(resolver);
+            q.path(folder).element("something").type(SELECTED_NODETYPE).orderBy(COLUMN_PATH);
+            List<String> expected = resolver == stagingResourceResolver ?
+                    new ArrayList<>(asList(node1version, node2oldandnew)) :
+                    new ArrayList<>(asList(node1current, node2new, node2oldandnew, unreleasedNode, unversionedNode));
+            Collections.sort(expected);
+            errorCollector.checkThat(resolver.toString(), pageThrough(q, COLUMN_PATH, 1), is(expected));
+            errorCollector.checkThat(resolver.toString(), pageThrough(q, COLUMN_PATH, 2), is(expected));
+
+            q.descending();
+            Collections.reverse(expected);
+            errorCollector.checkThat(resolver.toString(), pageThrough(q, COLUMN_PATH, 2), is(expected));
+        }
+    }
+
+    @Test
+    public void keysetPagingByProperty() throws RepositoryException {
+        for (ResourceResolver resolver : Arrays.asList(context.resourceResolver(), this.stagingResourceResolver)) {
+            Query q = QueryBuilder.makeQuery(resolver);
+            q.path(folder).element("something").type(SELECTED_NODETYPE).orderBy(PROP_CREATED);
+            List<String> all = pageThrough(q, PROP_CREATED, Integer.MAX_VALUE);
+            errorCollector.checkThat(resolver.toString(), all.size(), is(resolver == stagingResourceResolver ? 2 : 5));
+            errorCollector.checkThat(resolver.toString(), pageThrough(q, PROP_CREATED, 1), is(all));
+            errorCollector.checkThat(resolver.toString(), pageThrough(q, PROP_CREATED, 3), is(all));
+        }
+    }
+
+    /**
+     * Reads all results page by page with {@link Query#startAfter(Object, String)}, starting each page after the last
+     * result of the previous page.
+     */
+    protected List<String> pageThrough(Query q, String orderByProperty, int pageSize) {
+        List<String> paths = new ArrayList<>();
+        Object lastValue = null;
+        String lastPath = null;
+        while (paths.size() < 100) {
+            q.startAfter(lastValue, lastPath).limit(pageSize);
+            List<Resource> page = IterableUtils.toList(q.execute());
+            for (Resource resource : page) {
+                paths.add(resource.getPath());
+                lastPath = resource.getPath();
+                lastValue = COLUMN_PATH.equals(orderByProperty) ? lastPath : resource.getValueMap().get(orderByProperty);
+            }
+            if (page.size() < pageSize) break;
+        }
+        return paths;
+    }
+
+    @Test
+    public void parallelExecution() throws Exception {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(3, 3, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>());
+        try {
+            Query q = stagingResourceResolver.adaptTo(QueryBuilder.class).createQuery();
+            q.path(folder).element("something").type(SELECTED_NODETYPE).orderBy(COLUMN_PATH);
+            List<Resource> sequential = IterableUtils.toList(q.execute());
+            q.parallel(executor);
+            List<Resource> parallel = IterableUtils.toList(q.execute());
+            assertResults(parallel, node1version, node2oldandnew);
+            errorCollector.checkThat(parallel.size(), is(sequential.size()));
+            for (int i = 0; i < Math.min(parallel.size(), sequential.size()); ++i) {
+                errorCollector.checkThat(parallel.get(i).getPath(), is(sequential.get(i).getPath()));
+            }
+
+            q.limit(1);
+            assertResults(q, node1version);
+
+            Iterator<Resource> iterator = q.limit(Long.MAX_VALUE).execute().iterator();
+            errorCollector.checkThat(iterator.next().getPath(), is(node1version));
+            executor.shutdown();
+            errorCollector.checkThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+            errorCollector.checkThat(executor.getCompletedTaskCount(), is(9L));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A consumer stopping early must not keep the background queries running - neither if the iterator is closed
+     * nor if it's discarded. Discarding is simulated by clearing the weak reference, as the garbage collector would.
+     */
+    @Test
+    public void parallelExecutionAbandoned() throws Exception {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>());
+        try {
+            Row row = Mockito.mock(Row.class);
+            RowIterator endlessRows = Mockito.mock(RowIterator.class);
+            when(endlessRows.hasNext()).thenReturn(true);
+            when(endlessRows.nextRow()).thenReturn(row);
+            QueryResult result = Mockito.mock(QueryResult.class);
+            when(result.getColumnNames()).thenReturn(new String[]{COLUMN_PATH});
+            when(result.getRows()).thenReturn(endlessRows);
+            ResourceResolver baseResolver = Mockito.mock(ResourceResolver.class);
+            ResourceResolver closedIteratorResolver = Mockito.mock(ResourceResolver.class);
+            ResourceResolver discardedIteratorResolver = Mockito.mock(ResourceResolver.class);
+            when(baseResolver.clone(null)).thenReturn(closedIteratorResolver, discardedIteratorResolver);
+
+            ParallelQueryIterator closed = new ParallelQueryIterator(executor, baseResolver, Long.MAX_VALUE,
+                    (resolver) -> result, "closed");
+            errorCollector.checkThat(closed.next(), notNullValue());
+            closed.close();
+
+            ParallelQueryIterator discarded = new ParallelQueryIterator(executor, baseResolver, Long.MAX_VALUE,
+                    (resolver) -> result, "discarded");
+            errorCollector.checkThat(discarded.next(), notNullValue());
+            discarded.producer.consumer.clear();
+
+            executor.shutdown();
+            errorCollector.checkThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+            Mockito.verify(closedIteratorResolver).close();
+            Mockito.verify(discardedIteratorResolver).close();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     protected void assertResults(Query q, String... expected) throws RepositoryException {
         assertResults(IterableUtils.toList(q.execute()), expected);
     }
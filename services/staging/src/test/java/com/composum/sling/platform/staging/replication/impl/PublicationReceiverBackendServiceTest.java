@@ -0,0 +1,139 @@
+package com.composum.sling.platform.staging.replication.impl;
+
+import com.composum.platform.commons.util.OutputStreamInputStreamAdapter;
+import com.composum.sling.platform.staging.replication.ReplicationConstants;
+import com.composum.sling.platform.staging.replication.ReplicationPaths;
+import com.composum.sling.platform.staging.replication.UpdateInfo;
+import com.composum.sling.platform.testing.testutil.AnnotationWithDefaults;
+import com.composum.sling.platform.testing.testutil.ErrorCollectorAlwaysPrintingFailures;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link PublicationReceiverBackendService}.
+ */
+public class PublicationReceiverBackendServiceTest {
+
+    @Rule
+    public final SlingContext context = new SlingContext(ResourceResolverType.JCR_OAK);
+
+    @Rule
+    public final ErrorCollectorAlwaysPrintingFailures ec = new ErrorCollectorAlwaysPrintingFailures();
+
+    protected PublicationReceiverBackendService service;
+
+    protected ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        service = new PublicationReceiverBackendService();
+        service.config = AnnotationWithDefaults.of(PublicationReceiverBackendService.Configuration.class);
+        service.resolverFactory = mock(ResourceResolverFactory.class);
+        when(service.resolverFactory.getServiceResourceResolver(null)).thenAnswer((x) -> context.resourceResolver().clone(null));
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Streams a batch through a pipe as the in-place replication does. The central directory of the batch zip is
+     * larger than the pipe buffer, so the writer can only finish if the backend reads the stream to the end.
+     */
+    @Test
+    public void batchUploadRoundtrip() throws Exception {
+        ReplicationPaths replicationPaths = new ReplicationPaths("/content/site", null, null, null);
+        UpdateInfo updateInfo = service.startUpdate(replicationPaths);
+
+        List<String> packageRootPaths = new ArrayList<>();
+        for (int i = 0; i < 50; ++i) {
+            packageRootPaths.add("/content/site/page" + i);
+        }
+
+        try (InputStream batchStream = OutputStreamInputStreamAdapter.of((outputStream) -> writeBatch(outputStream, packageRootPaths), executor)) {
+            service.batchUpload(updateInfo.updateId, batchStream);
+        }
+
+        context.resourceResolver().refresh();
+        Resource tmpLocation = context.resourceResolver().getResource(service.config.tmpDir() + "/" + updateInfo.updateId);
+        ec.checkThat(tmpLocation, notNullValue());
+        ec.checkThat(tmpLocation.getValueMap().get(ReplicationConstants.ATTR_UPDATEDPATHS, String[].class),
+                arrayContaining(packageRootPaths.toArray(new String[0])));
+        for (int i = 0; i < packageRootPaths.size(); ++i) {
+            Resource page = tmpLocation.getChild(packageRootPaths.get(i).substring(1));
+            ec.checkThat(packageRootPaths.get(i), page, notNullValue());
+            if (page != null) {
+                ec.checkThat(page.getValueMap().get("title", String.class), is("page " + i));
+            }
+        }
+    }
+
+    /** Writes a batch like the in-place replication does: the packages, then the manifest of their root paths. */
+    protected void writeBatch(OutputStream outputStream, List<String> packageRootPaths) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(outputStream);
+        for (int i = 0; i < packageRootPaths.size(); ++i) {
+            zip.putNextEntry(new ZipEntry(PublicationReceiverBackend.BATCH_PACKAGE_PREFIX + i));
+            zip.write(makePackage(packageRootPaths.get(i), "page " + i));
+            zip.closeEntry();
+        }
+        zip.putNextEntry(new ZipEntry(PublicationReceiverBackend.BATCH_MANIFEST));
+        zip.write(String.join("\n", packageRootPaths).getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+        zip.close();
+    }
+
+    /** A minimal content package with one unstructured node at the path that has a title. */
+    protected byte[] makePackage(String path, String title) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("META-INF/vault/properties.xml"));
+            zip.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                    "<!DOCTYPE properties SYSTEM \"http://java.sun.com/dtd/properties.dtd\">\n" +
+                    "<properties>\n" +
+                    "<entry key=\"group\">test</entry>\n" +
+                    "<entry key=\"name\">" + path.replace('/', '_') + "</entry>\n" +
+                    "<entry key=\"version\">1</entry>\n" +
+                    "</properties>\n").getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("META-INF/vault/filter.xml"));
+            zip.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                    "<workspaceFilter version=\"1.0\">\n" +
+                    "<filter root=\"" + path + "\"/>\n" +
+                    "</workspaceFilter>\n").getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("jcr_root" + path + "/.content.xml"));
+            zip.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                    "<jcr:root xmlns:jcr=\"http://www.jcp.org/jcr/1.0\" xmlns:nt=\"http://www.jcp.org/jcr/nt/1.0\"\n" +
+                    "    jcr:primaryType=\"nt:unstructured\" title=\"" + title + "\"/>\n").getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+}